@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# Builds the plain JVM benchmarks against the app sources they exercise and
+# runs one of them, e.g.
+#
+#   bench/run.sh HalBench sim sysfs
+#   bench/run.sh SampleLogStress -r 100000 -t 10
+#   bench/run.sh AlarmBench 500
+#   bench/run.sh PropertyIndexBench [<getprop dump>]
+#   bench/run.sh GpioWatcherTest [<toggles>]
+#   bench/run.sh HotplugTest
+#   bench/run.sh PollSchedulerStress [-t <seconds>]
+#   bench/run.sh SysfsCacheBench [<attribute>...]
+#   bench/run.sh SparklineBench [<sensors>...]
+#   bench/run.sh ThumbAllocTest [<sweeps>]
+#
+# Only a JDK is needed; the few Android classes involved are stubbed in
+# bench/stubs.
+
+set -e
+
+cd "$(dirname "$0")/.."
+app=src/com/gateworks/gateworksdemo
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+
+javac -nowarn -encoding UTF-8 -d "$out" $(find bench/stubs bench/src -name '*.java') \
+    $app/AlarmRules.java \
+    $app/CategoryState.java \
+    $app/Device.java \
+    $app/DeviceTable.java \
+    $app/GateworksHardware.java \
+    $app/GpioBatch.java \
+    $app/GpioEdgeWatcher.java \
+    $app/Hal.java \
+    $app/Hardware.java \
+    $app/HotplugWatcher.java \
+    $app/InstrumentedHardware.java \
+    $app/LatencyStats.java \
+    $app/LedTriggerCatalog.java \
+    $app/PollPolicy.java \
+    $app/PollScheduler.java \
+    $app/PropertyIndex.java \
+    $app/SampleLog.java \
+    $app/SampleLogReader.java \
+    $app/SampleRing.java \
+    $app/SimulatedHardware.java \
+    $app/SparklineView.java \
+    $app/SysfsAttributeCache.java \
+    $app/SysfsHardware.java \
+    $app/SysfsPaths.java \
+    $app/ThumbRenderer.java
+
+if [ $# -eq 0 ]; then
+    echo "usage: $0 <benchmark> [args...]" >&2
+    exit 1
+fi
+main=$1
+shift
+java -cp "$out" com.gateworks.gateworksdemo.$main "$@"
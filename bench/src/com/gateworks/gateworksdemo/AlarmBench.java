@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Cost of checking alarm rules, as the SamplingService does on every reading:
+ *
+ *   bench/run.sh AlarmBench [<rules>]
+ *
+ * RULES (by default 500) threshold rules are compiled by AlarmRules and
+ * spread over the SENSORS sensors a board typically has, or all put on one
+ * sensor. Three cases are measured:
+ *
+ *   quiet   readings that stay clear of every threshold, the normal case
+ *   single  the same, with every rule on the one sensor being read
+ *   storm   readings that alternately raise and clear every rule of a sensor
+ *
+ * The quiet cases are also reported per rule, and the allocation of a million
+ * quiet evaluations is measured where the JVM can tell, since checking a
+ * reading must not allocate.
+ */
+public class AlarmBench {
+    private static final int RULES = 500;
+    private static final int SENSORS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int rules = args.length > 0 ? Integer.parseInt(args[0]) : RULES;
+
+        String[] sensors = new String[SENSORS];
+        for (int s = 0; s < SENSORS; s++)
+            sensors[s] = "in" + s;
+        AlarmRules.Notifier notifier = new AlarmRules.Notifier() {
+            public void onAlarm(int rule, String description, int value, boolean raised) {
+            }
+        };
+        final AlarmRules spread = AlarmRules.load(sensors, properties(sensors, rules), notifier);
+        final AlarmRules single = AlarmRules.load(sensors,
+                properties(new String[] {sensors[0]}, rules), notifier);
+
+        Bench.printHeader();
+        double quiet = Bench.run("alarm.quiet", new Bench.Op() {
+            public int run(int invocation) {
+                spread.evaluate(invocation % SENSORS, 500000 + (invocation & 1023));
+                return 0;
+            }
+        });
+        double one = Bench.run("alarm.single", new Bench.Op() {
+            public int run(int invocation) {
+                single.evaluate(0, 500000 + (invocation & 1023));
+                return 0;
+            }
+        });
+        Bench.run("alarm.storm", new Bench.Op() {
+            public int run(int invocation) {
+                // Above every raise threshold, then below every clear one
+                spread.evaluate(0, (invocation & 1) != 0 ? 2000000 : 0);
+                return 0;
+            }
+        });
+        spread.reset();
+
+        System.out.printf("%d rules: %.2f ns per rule spread over %d sensors, %.2f ns on one%n",
+                rules, quiet / ((double) rules / SENSORS), SENSORS, one / rules);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+            long id = Thread.currentThread().getId();
+            long before = mx.getThreadAllocatedBytes(id);
+            for (int i = 0; i < 1000000; i++)
+                spread.evaluate(i % SENSORS, 500000 + (i & 1023));
+            long allocated = mx.getThreadAllocatedBytes(id) - before;
+            System.out.println("Allocated by 1000000 quiet evaluations: " + allocated + " bytes");
+        }
+    }
+
+    // Rules spread round robin over the sensors, each with its own thresholds
+    private static PropertyIndex properties(String[] sensors, int rules) {
+        StringBuilder dump = new StringBuilder();
+        for (int i = 0; i < rules; i++) {
+            int raise = 1000000 + i * 10;
+            dump.append("[").append(AlarmRules.PROPERTY_PREFIX).append(i).append("]: [")
+                    .append(sensors[i % sensors.length]).append(" > ").append(raise)
+                    .append(' ').append(raise - 5000).append("]\n");
+        }
+        return PropertyIndex.parse(dump.toString());
+    }
+}
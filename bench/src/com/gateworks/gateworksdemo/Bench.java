@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * A small JMH style harness for the benchmarks in this tree.
+ *
+ * Every benchmark is first run for WARMUP_ITERATIONS untimed iterations so
+ * the JIT has settled, then for MEASURE_ITERATIONS timed ones. An iteration
+ * repeats the operation for ITERATION_TIME and yields the mean time per
+ * operation; the report gives the mean over the timed iterations with its
+ * 99.9% confidence error, like JMH's average time mode. Whatever an operation
+ * returns is folded into a sink so the JIT cannot drop the work.
+ */
+class Bench {
+    static final int WARMUP_ITERATIONS = 5;
+    static final int MEASURE_ITERATIONS = 10;
+    static final long ITERATION_TIME = 200000000L; // ns
+    private static final int CHECK_EVERY = 16; // operations between clock reads
+
+    interface Op {
+        // invocation counts up from 0 over the whole run
+        int run(int invocation) throws Exception;
+    }
+
+    private static volatile int sink;
+
+    static void printHeader() {
+        System.out.printf("%-32s %8s %12s %10s %14s%n", "Benchmark", "Mode", "Score", "Error", "Units");
+    }
+
+    // Runs one benchmark and prints its line; returns the mean in ns/op
+    static double run(String name, Op op) throws Exception {
+        double[] scores = new double[MEASURE_ITERATIONS];
+        int invocation = 0;
+        int acc = 0;
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURE_ITERATIONS; iteration++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long end = start + ITERATION_TIME;
+            long now;
+            do {
+                for (int i = 0; i < CHECK_EVERY; i++)
+                    acc += op.run(invocation++);
+                ops += CHECK_EVERY;
+            } while ((now = System.nanoTime()) < end);
+            if (iteration >= 0)
+                scores[iteration] = (double) (now - start) / ops;
+        }
+        sink = acc;
+
+        double mean = 0;
+        for (double score : scores)
+            mean += score;
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores)
+            variance += (score - mean) * (score - mean);
+        variance /= scores.length - 1;
+        // t(0.9995, 9) for the ten timed iterations
+        double error = 4.781 * Math.sqrt(variance / scores.length);
+        System.out.printf("%-32s %8s %12.1f %10s %14s%n", name, "avgt", mean,
+                String.format("+- %.1f", error), "ns/op");
+        return mean;
+    }
+}
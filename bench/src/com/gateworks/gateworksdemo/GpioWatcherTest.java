@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs GpioEdgeWatcher against fake gpio trees and checks every change is
+ * seen in time:
+ *
+ *   bench/run.sh GpioWatcherTest [<toggles>]
+ *
+ * Three trees are used, each with two input pins toggled TOGGLES times, one
+ * toggle at a time:
+ *
+ *   fifo   value files are FIFOs, so a write wakes poll like an edge interrupt;
+ *          one pin has an edge attribute, the other has none
+ *   sysfs  a SysfsHardware tree, plain value files and no edge attributes,
+ *          so both pins are left to the fallback polling
+ *   hal    no pin directories at all; the pins are read through the Hal
+ *
+ * Edge driven pins must report within EDGE_LATENCY, polled pins within the
+ * fallback's longest interval plus POLL_MARGIN. The watcher must never create
+ * an edge attribute, and the one that exists must be back to "none" once the
+ * watcher has stopped.
+ */
+public class GpioWatcherTest {
+    private static final int TOGGLES = 20;
+    private static final long EDGE_LATENCY = 100; // ms
+    private static final long POLL_MARGIN = 200; // ms
+    private static final String[] NAMES = {"dio0", "dio1"};
+
+    private static class Event {
+        final int pin;
+        final int value;
+        final long time;
+
+        Event(int pin, int value) {
+            this.pin = pin;
+            this.value = value;
+            this.time = System.nanoTime();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int toggles = args.length > 0 ? Integer.parseInt(args[0]) : TOGGLES;
+        File root = new File(System.getProperty("java.io.tmpdir"), "gwgpio-" + System.nanoTime());
+
+        boolean passed;
+        try {
+            passed = fifo(new File(root, "fifo"), toggles)
+                    & sysfs(new File(root, "sysfs"), toggles)
+                    & hal(new File(root, "hal"), toggles);
+        } finally {
+            delete(root);
+        }
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean fifo(File root, int toggles) throws Exception {
+        String[] dirs = new String[NAMES.length];
+        for (int pin = 0; pin < NAMES.length; pin++) {
+            File dir = new File(root, NAMES[pin]);
+            if (!dir.mkdirs())
+                throw new IOException("Unable to create " + dir);
+            write(new File(dir, "direction"), "in");
+            mkfifo(new File(dir, "value"));
+            dirs[pin] = dir.getPath();
+        }
+        // Only the first pin has edge support
+        File edge = new File(dirs[0], "edge");
+        write(edge, "none");
+
+        final LinkedBlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+        GpioEdgeWatcher watcher = start(dirs, events);
+        boolean passed = waitFor(edge, "both");
+        // The first value a pin reports only seeds it
+        for (int pin = 0; pin < NAMES.length; pin++)
+            write(new File(dirs[pin], "value"), "0");
+        Thread.sleep(EDGE_LATENCY);
+
+        long[] latency = new long[toggles * NAMES.length];
+        int n = 0;
+        for (int i = 0; i < toggles; i++) {
+            for (int pin = 0; pin < NAMES.length; pin++) {
+                int value = (i + 1) & 1;
+                long t = System.nanoTime();
+                write(new File(dirs[pin], "value"), Integer.toString(value));
+                Event e = events.poll(EDGE_LATENCY, TimeUnit.MILLISECONDS);
+                if (e == null || e.pin != pin || e.value != value) {
+                    System.out.printf("fifo: toggle %d of %s to %d not reported%n",
+                            i, NAMES[pin], value);
+                    passed = false;
+                    continue;
+                }
+                latency[n++] = e.time - t;
+            }
+        }
+        watcher.stop();
+        Thread.sleep(EDGE_LATENCY);
+
+        passed &= checkEdges(root, dirs, "fifo");
+        if (!"none".equals(read(edge))) {
+            System.out.println("fifo: edge of " + NAMES[0] + " left at " + read(edge));
+            passed = false;
+        }
+        printLatency("fifo", Arrays.copyOf(latency, n));
+        return passed;
+    }
+
+    private static boolean sysfs(File root, int toggles) throws Exception {
+        SysfsHardware hw = SysfsHardware.populate(root.getPath(), new String[0], NAMES,
+                new String[0], new String[0]);
+        String[] dirs = new String[NAMES.length];
+        for (int pin = 0; pin < NAMES.length; pin++)
+            dirs[pin] = hw.getGpioDir(NAMES[pin]);
+        boolean passed = polled("sysfs", hw, dirs, toggles);
+        return checkEdges(root, dirs, "sysfs") & passed;
+    }
+
+    private static boolean hal(File root, int toggles) throws Exception {
+        SysfsHardware hw = SysfsHardware.populate(root.getPath(), new String[0], NAMES,
+                new String[0], new String[0]);
+        Hal.set(hw);
+        String[] dirs = new String[NAMES.length];
+        boolean passed = polled("hal", hw, dirs, toggles);
+        for (int pin = 0; pin < NAMES.length; pin++)
+            dirs[pin] = hw.getGpioDir(NAMES[pin]);
+        return checkEdges(root, dirs, "hal") & passed;
+    }
+
+    // Toggles pins that are left to the fallback polling, after letting the
+    // policy back off to its longest interval
+    private static boolean polled(String name, Hardware hw, String[] dirs, int toggles)
+            throws Exception {
+        final LinkedBlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+        GpioEdgeWatcher watcher = start(dirs, events);
+        long deadline = GpioEdgeWatcher.MAX_POLL_INTERVAL + POLL_MARGIN;
+        boolean passed = true;
+
+        long[] latency = new long[toggles * NAMES.length];
+        int n = 0;
+        Thread.sleep(2 * GpioEdgeWatcher.MAX_POLL_INTERVAL);
+        for (int i = 0; i < toggles; i++) {
+            for (int pin = 0; pin < NAMES.length; pin++) {
+                int value = (i + 1) & 1;
+                long t = System.nanoTime();
+                hw.setGpioValue(NAMES[pin], value);
+                Event e = events.poll(deadline, TimeUnit.MILLISECONDS);
+                if (e == null || e.pin != pin || e.value != value) {
+                    System.out.printf("%s: toggle %d of %s to %d not reported%n",
+                            name, i, NAMES[pin], value);
+                    passed = false;
+                    continue;
+                }
+                latency[n++] = e.time - t;
+            }
+        }
+        watcher.stop();
+        Thread.sleep(GpioEdgeWatcher.MIN_POLL_INTERVAL);
+        printLatency(name, Arrays.copyOf(latency, n));
+        return passed;
+    }
+
+    private static GpioEdgeWatcher start(String[] dirs, final LinkedBlockingQueue<Event> events) {
+        PollPolicy policy = new PollPolicy("gpio", NAMES, GpioEdgeWatcher.MIN_POLL_INTERVAL,
+                GpioEdgeWatcher.MAX_POLL_INTERVAL, GpioEdgeWatcher.BACKGROUND_POLL_INTERVAL);
+        GpioEdgeWatcher watcher = new GpioEdgeWatcher(NAMES, dirs, policy,
+                new GpioEdgeWatcher.Listener() {
+            public void onGpioChanged(int pin, int value) {
+                events.add(new Event(pin, value));
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    // Only the edge attributes the tree was given may exist
+    private static boolean checkEdges(File root, String[] dirs, String name) {
+        boolean passed = true;
+        for (int pin = 0; pin < dirs.length; pin++) {
+            File edge = new File(dirs[pin], "edge");
+            if (edge.exists() && !(name.equals("fifo") && pin == 0)) {
+                System.out.println(name + ": watcher created " + edge);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static void printLatency(String name, long[] latency) {
+        if (latency.length == 0)
+            return;
+        Arrays.sort(latency);
+        System.out.printf("%-6s %3d changes  median %8.2f ms  max %8.2f ms%n", name,
+                latency.length, latency[latency.length / 2] / 1e6,
+                latency[latency.length - 1] / 1e6);
+    }
+
+    private static boolean waitFor(File file, String value) throws InterruptedException {
+        for (int i = 0; i < EDGE_LATENCY; i++) {
+            if (value.equals(read(file)))
+                return true;
+            Thread.sleep(1);
+        }
+        System.out.println(file + " never set to " + value);
+        return false;
+    }
+
+    private static void mkfifo(File file) throws Exception {
+        Process proc = new ProcessBuilder("mkfifo", file.getPath()).inheritIO().start();
+        if (proc.waitFor() != 0)
+            throw new IOException("Unable to create " + file);
+    }
+
+    private static void write(File file, String value) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write((value + "\n").getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                String line = br.readLine();
+                return line == null ? null : line.trim();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Poll, bind and write benchmarks for the Hal backends, run on a plain JVM:
+ *
+ *   bench/run.sh HalBench [sim] [sysfs[:<dir>]]
+ *
+ * Each backend is installed with Hal.set() and driven through the same calls
+ * the app makes:
+ *
+ *   poll.gpio   one pass over all gpios as MainActivity.sampleGpios() reads them
+ *   poll.hwmon  one pass over all hwmons as the SamplingService reads them
+ *   bind        a rescan into a DeviceTable plus the reads that bind every row
+ *   write.*     single Hal writes, and one GpioBatch.setAll() over all gpios
+ *
+ * The sysfs backend gets a freshly populated tree, by default on /dev/shm so
+ * file access costs are close to real sysfs; it is removed afterwards. With
+ * no arguments both backends are run.
+ */
+public class HalBench {
+    private static final String[] LEDS = {"user1", "user2"};
+    private static final String[] GPIOS = {
+            "dio0", "dio1", "dio2", "dio3", "dio4", "dio5", "dio6", "dio7",
+            "dio8", "dio9", "dio10", "dio11", "dio12", "dio13", "dio14", "dio15"};
+    private static final String[] HWMONS = {
+            "temp", "vin", "fan_tach", "3p3", "2p5", "1p8", "1p2", "core"};
+    private static final String[] PWMS = {"pwm2", "pwm3"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0)
+            args = new String[] {"sim", "sysfs"};
+
+        Bench.printHeader();
+        for (String backend : args) {
+            if (backend.equals("sim")) {
+                run("sim", new SimulatedHardware());
+            } else if (backend.startsWith("sysfs")) {
+                File root = backend.startsWith("sysfs:") ? new File(backend.substring(6)) :
+                        new File(defaultTmp(), "gwbench-" + System.nanoTime());
+                try {
+                    run("sysfs", SysfsHardware.populate(root.getPath(), LEDS, GPIOS, HWMONS, PWMS));
+                } finally {
+                    delete(root);
+                }
+            } else {
+                System.err.println("Unknown backend " + backend + ", expected sim or sysfs[:<dir>]");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void run(String backend, Hardware hw) throws Exception {
+        Hal.set(hw);
+        DeviceTable table = DeviceTable.scan(Hal.get().listDevices(true));
+        final Device[] leds = table.get(Device.Kind.LED);
+        final Device[] gpios = table.get(Device.Kind.GPIO);
+        final Device[] hwmons = table.get(Device.Kind.HWMON);
+        final Device[] pwms = table.get(Device.Kind.PWM);
+        final SysfsAttributeCache cache = new SysfsAttributeCache(64);
+
+        Bench.run(backend + ".poll.gpio", new Bench.Op() {
+            public int run(int invocation) {
+                int acc = 0;
+                for (Device gpio : gpios) {
+                    int value = gpio.path == null ? SysfsAttributeCache.UNAVAILABLE :
+                            cache.readInt(gpio.path, Device.GROUP_GPIO);
+                    if (value == SysfsAttributeCache.UNAVAILABLE)
+                        value = Hal.get().getGpioValue(gpio.name);
+                    acc += value + (Hal.get().isGpioInput(gpio.name) ? 1 : 0);
+                }
+                return acc;
+            }
+        });
+
+        Bench.run(backend + ".poll.hwmon", new Bench.Op() {
+            public int run(int invocation) {
+                int acc = 0;
+                for (Device hwmon : hwmons) {
+                    int value = hwmon.path == null ? SysfsAttributeCache.UNAVAILABLE :
+                            cache.readInt(hwmon.path, Device.GROUP_HWMON);
+                    acc += value != SysfsAttributeCache.UNAVAILABLE ? value :
+                            Hal.get().getHwmonValue(hwmon.name);
+                }
+                return acc;
+            }
+        });
+
+        Bench.run(backend + ".bind", new Bench.Op() {
+            public int run(int invocation) {
+                DeviceTable scanned = DeviceTable.scan(Hal.get().listDevices(true));
+                return bindAll(scanned);
+            }
+        });
+
+        Bench.run(backend + ".write.gpio", new Bench.Op() {
+            public int run(int invocation) {
+                Device gpio = gpios[invocation % gpios.length];
+                Hal.get().setGpioValue(gpio.name, invocation & 1);
+                return 0;
+            }
+        });
+
+        String[] names = new String[gpios.length];
+        String[] paths = new String[gpios.length];
+        final int[] pins = new int[gpios.length];
+        for (int i = 0; i < gpios.length; i++) {
+            names[i] = gpios[i].name;
+            paths[i] = gpios[i].path;
+            pins[i] = i;
+        }
+        final GpioBatch batch = new GpioBatch(names, paths);
+        final Semaphore done = new Semaphore(0);
+        final GpioBatch.Callback callback = new GpioBatch.Callback() {
+            public void onComplete(int[] pins, int[] values, long elapsedNanos) {
+                done.release();
+            }
+        };
+        try {
+            Bench.run(backend + ".write.gpio.batch", new Bench.Op() {
+                public int run(int invocation) throws InterruptedException {
+                    batch.setAll(pins, invocation & 1, callback);
+                    done.acquire();
+                    return 0;
+                }
+            });
+        } finally {
+            batch.close();
+        }
+
+        Bench.run(backend + ".write.led", new Bench.Op() {
+            public int run(int invocation) {
+                Hal.get().setLedValue(leds[invocation % leds.length].name, (invocation & 1) != 0);
+                return 0;
+            }
+        });
+
+        Bench.run(backend + ".write.pwm", new Bench.Op() {
+            public int run(int invocation) {
+                Hal.get().setPwmDutyCycle(pwms[invocation % pwms.length].name,
+                        (invocation & 1023) * 1000);
+                return 0;
+            }
+        });
+
+        cache.evictAll();
+    }
+
+    // The hardware reads ExpandableListAdapter makes when it binds each row
+    private static int bindAll(DeviceTable table) {
+        Hardware hw = Hal.get();
+        int acc = 0;
+        for (int g = 0; g < table.getGroupCount(); g++) {
+            for (Device device : table.getGroup(g)) {
+                switch (device.kind) {
+                    case LED:
+                        acc += LedTriggerCatalog.get().entry(device.name).getSelected();
+                        acc += hw.getLedValue(device.name) ? 1 : 0;
+                        break;
+                    case GPIO:
+                        acc += hw.getGpioValue(device.name) + (hw.isGpioInput(device.name) ? 1 : 0);
+                        break;
+                    case HWMON:
+                        acc += hw.getHwmonValue(device.name);
+                        break;
+                    case PWM:
+                        acc += (hw.getPwmEnabled(device.name) ? 1 : 0) + hw.getPwmPeriod(device.name)
+                                + hw.getPwmDutyCycle(device.name);
+                        break;
+                }
+            }
+        }
+        return acc;
+    }
+
+    private static File defaultTmp() {
+        File shm = new File("/dev/shm");
+        return shm.isDirectory() && shm.canWrite() ? shm :
+                new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        if (file.exists() && !file.delete())
+            throw new IOException("Unable to delete " + file);
+    }
+}
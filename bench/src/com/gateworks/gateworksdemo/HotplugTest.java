@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the board backend lists exactly the devices present in a fake
+ * sysfs tree, and that HotplugWatcher notices them come and go:
+ *
+ *   bench/run.sh HotplugTest
+ *
+ * The devices are named by PROPERTIES as the hw.* properties would name them
+ * on a board. Devices are plugged by creating their class directories the way
+ * the kernel does (an LED directory, a gpio chip with base and ngpio, a hwmon
+ * input, a pwm chip with npwm) and unplugged by removing them. After each
+ * step the watcher must report the new list within SETTLE_DELAY plus
+ * NOTIFY_MARGIN, and a direct rescan must agree with it.
+ */
+public class HotplugTest {
+    private static final String PROPERTIES =
+            "[hw.led.user1]: [0]\n" +
+            "[hw.led.user2]: [gw:user2]\n" +
+            "[hw.gpio.dio0]: [240]\n" +
+            "[hw.gpio.dio1]: [260]\n" +
+            "[hw.hwmon.temp]: [/sys/class/hwmon/hwmon0/temp1_input]\n" +
+            "[hw.pwm.pwm2]: [pwmchip0/pwm1]\n" +
+            "[hw.pwm.pwm3]: [pwmchip1/pwm0]\n" +
+            "[hw.pwm.pwm4]: [pwmchip0/pwm2]\n";
+    private static final long NOTIFY_MARGIN = 1000; // ms
+
+    private static File root;
+    private static boolean passed = true;
+
+    public static void main(String[] args) throws Exception {
+        root = new File(System.getProperty("java.io.tmpdir"), "gwhotplug-" + System.nanoTime());
+        try {
+            run();
+        } finally {
+            delete(root);
+        }
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static void run() throws Exception {
+        for (String cls : HotplugWatcher.CLASSES)
+            mkdirs(new File(root, "class/" + cls));
+        SysfsPaths.setRoot(root.getPath());
+        GateworksHardware hw = new GateworksHardware(PropertyIndex.parse(PROPERTIES));
+        Hal.set(hw);
+
+        DeviceTable devices = DeviceTable.scan(hw.listDevices(true));
+        check("empty tree", devices);
+
+        final LinkedBlockingQueue<DeviceTable> changes = new LinkedBlockingQueue<DeviceTable>();
+        HotplugWatcher watcher = new HotplugWatcher(devices, new HotplugWatcher.Listener() {
+            public void onDevicesChanged(DeviceTable devices) {
+                changes.add(devices);
+            }
+        });
+        watcher.start();
+
+        // The led matches by property name, the other by value
+        mkdirs(new File(root, "class/leds/user1"));
+        mkdirs(new File(root, "class/leds/gw:user2"));
+        step("leds", changes, "user1", "user2");
+
+        // dio0 is on the new chip, dio1 is not
+        File chip = new File(root, "class/gpio/gpiochip240");
+        mkdirs(chip);
+        write(new File(chip, "base"), "240");
+        write(new File(chip, "ngpio"), "16");
+        step("gpio chip", changes, "user1", "user2", "dio0");
+
+        File hwmon = new File(root, "class/hwmon/hwmon0");
+        mkdirs(hwmon);
+        write(new File(hwmon, "temp1_input"), "45000");
+        step("hwmon", changes, "user1", "user2", "dio0", "temp");
+
+        // pwm3 is on another chip and pwm4 beyond this chip's channels
+        File pwmchip = new File(root, "class/pwm/pwmchip0");
+        mkdirs(pwmchip);
+        write(new File(pwmchip, "npwm"), "2");
+        step("pwm chip", changes, "user1", "user2", "dio0", "temp", "pwm2");
+
+        delete(pwmchip);
+        delete(new File(root, "class/leds/user1"));
+        step("unplug", changes, "user2", "dio0", "temp");
+
+        watcher.stop();
+    }
+
+    // Waits for the watcher to report the devices, then rescans to confirm
+    private static void step(String name, LinkedBlockingQueue<DeviceTable> changes,
+                             String... expected) throws Exception {
+        long t = System.nanoTime();
+        DeviceTable reported = changes.poll(HotplugWatcher.SETTLE_DELAY + NOTIFY_MARGIN,
+                TimeUnit.MILLISECONDS);
+        if (reported == null) {
+            System.out.println(name + ": no change reported");
+            passed = false;
+        } else {
+            System.out.printf("%-10s reported after %4d ms%n", name,
+                    (System.nanoTime() - t) / 1000000);
+            check(name, reported, expected);
+        }
+        check(name + " rescan", DeviceTable.scan(Hal.get().listDevices(true)), expected);
+    }
+
+    private static void check(String name, DeviceTable devices, String... expected) {
+        List<String> listed = new ArrayList<String>();
+        for (Device.Kind kind : Device.Kind.values())
+            for (Device device : devices.get(kind))
+                listed.add(device.name);
+        if (!listed.equals(Arrays.asList(expected))) {
+            System.out.println(name + ": listed " + listed + ", expected "
+                    + Arrays.asList(expected));
+            passed = false;
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+    }
+
+    private static void write(File file, String value) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write((value + "\n").getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of CategoryState and PollScheduler:
+ *
+ *   bench/run.sh PollSchedulerStress [-t <seconds>]
+ *
+ * One job per group reads its device from a SysfsHardware tree, with
+ * intervals short enough to keep the worker busy. A toggler thread per group
+ * pauses and resumes it at random, so the pause mask is changed from four
+ * threads at once while the jobs run. Checked are:
+ *
+ *   - a paused group does no reads, apart from the one the worker may already
+ *     have started when the pause came in
+ *   - a resumed group is read again within RESUME_LATENCY
+ *   - with every group paused the worker parks, using less than IDLE_CPU of
+ *     its CPU time while idle for IDLE_TIME
+ *   - the task given to shutdown() runs once, after the last read, even when
+ *     the shutdown comes in during a read
+ */
+public class PollSchedulerStress {
+    private static final int[] INTERVALS = {1, 2, 5, 10}; // ms, per group
+    private static final long RESUME_LATENCY = 100; // ms
+    private static final long IDLE_TIME = 1000; // ms
+    private static final double IDLE_CPU = 0.01;
+    private static final long SLOW_READ = 5; // ms, while shutting down
+
+    private static final Device.Kind[] KINDS = Device.Kind.values();
+    private static final CategoryState state = new CategoryState();
+    private static final AtomicInteger[] reads = new AtomicInteger[KINDS.length];
+    private static final AtomicInteger[] pausedReads = new AtomicInteger[KINDS.length];
+    private static volatile boolean slow;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = 10;
+        if (args.length == 2 && args[0].equals("-t")) {
+            seconds = Integer.parseInt(args[1]);
+        } else if (args.length != 0) {
+            System.err.println("usage: PollSchedulerStress [-t <seconds>]");
+            System.exit(1);
+        }
+
+        File root = new File(System.getProperty("java.io.tmpdir"), "gwpoll-" + System.nanoTime());
+        boolean passed;
+        try {
+            passed = run(root, seconds);
+        } finally {
+            delete(root);
+        }
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(File root, int seconds) throws Exception {
+        final SysfsHardware hw = SysfsHardware.populate(root.getPath(), new String[] {"user1"},
+                new String[] {"dio0"}, new String[] {"temp"}, new String[] {"pwm2"});
+        PollScheduler scheduler = new PollScheduler(state);
+        for (int k = 0; k < KINDS.length; k++) {
+            final int g = k;
+            reads[g] = new AtomicInteger();
+            pausedReads[g] = new AtomicInteger();
+            scheduler.addJob(KINDS[g].groupType, INTERVALS[g], new Runnable() {
+                public void run() {
+                    if (state.isPaused(KINDS[g].groupType))
+                        pausedReads[g].incrementAndGet();
+                    read(hw, KINDS[g]);
+                    if (slow)
+                        sleep(SLOW_READ);
+                    reads[g].incrementAndGet();
+                }
+            });
+        }
+
+        final long end = System.nanoTime() + seconds * 1000000000L;
+        Toggler[] togglers = new Toggler[KINDS.length];
+        for (int g = 0; g < KINDS.length; g++) {
+            togglers[g] = new Toggler(g, end);
+            togglers[g].start();
+        }
+        boolean passed = true;
+        for (Toggler toggler : togglers) {
+            toggler.join();
+            passed &= toggler.report();
+        }
+
+        passed &= checkIdle();
+        passed &= checkShutdown(scheduler);
+        return passed;
+    }
+
+    private static void read(Hardware hw, Device.Kind kind) {
+        switch (kind) {
+        case LED:
+            hw.getLedValue("user1");
+            break;
+        case GPIO:
+            hw.getGpioValue("dio0");
+            break;
+        case HWMON:
+            hw.getHwmonValue("temp");
+            break;
+        case PWM:
+            hw.getPwmDutyCycle("pwm2");
+            break;
+        }
+    }
+
+    // Pauses and resumes one group at random intervals until the end time
+    private static class Toggler extends Thread {
+        private final int g;
+        private final long end;
+        private final Random random;
+        private int pauses;
+        private int worstPausedReads;
+        private long[] resumeLatency = new long[64];
+        private int resumes;
+        private int lateResumes;
+
+        Toggler(int g, long end) {
+            super("toggle-" + KINDS[g].name());
+            this.g = g;
+            this.end = end;
+            this.random = new Random(g);
+        }
+
+        public void run() {
+            int groupType = KINDS[g].groupType;
+            try {
+                while (System.nanoTime() < end) {
+                    Thread.sleep(random.nextInt(20));
+
+                    int before = pausedReads[g].get();
+                    state.setPaused(groupType, true);
+                    pauses++;
+                    Thread.sleep(random.nextInt(30));
+                    // One read may already have been past the worker's check
+                    worstPausedReads = Math.max(worstPausedReads, pausedReads[g].get() - before);
+
+                    int resumedAt = reads[g].get();
+                    long t = System.nanoTime();
+                    state.setPaused(groupType, false);
+                    while (reads[g].get() == resumedAt
+                            && System.nanoTime() - t < RESUME_LATENCY * 1000000)
+                        Thread.sleep(1);
+                    if (reads[g].get() == resumedAt)
+                        lateResumes++;
+                    if (resumes == resumeLatency.length)
+                        resumeLatency = Arrays.copyOf(resumeLatency, resumes * 2);
+                    resumeLatency[resumes++] = System.nanoTime() - t;
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        boolean report() {
+            long[] latency = Arrays.copyOf(resumeLatency, resumes);
+            Arrays.sort(latency);
+            System.out.printf("%-5s %6d reads  %4d pauses  worst %d paused reads"
+                    + "  resume median %5.2f ms max %6.2f ms%n", KINDS[g].name(),
+                    reads[g].get(), pauses, worstPausedReads,
+                    latency.length == 0 ? 0 : latency[latency.length / 2] / 1e6,
+                    latency.length == 0 ? 0 : latency[latency.length - 1] / 1e6);
+            boolean passed = true;
+            if (worstPausedReads > 1) {
+                System.out.println(KINDS[g].name() + ": read while paused");
+                passed = false;
+            }
+            if (lateResumes > 0) {
+                System.out.println(KINDS[g].name() + ": " + lateResumes
+                        + " resumes not read within " + RESUME_LATENCY + " ms");
+                passed = false;
+            }
+            return passed;
+        }
+    }
+
+    // With every group paused the worker must park rather than spin
+    private static boolean checkIdle() throws InterruptedException {
+        for (Device.Kind kind : KINDS)
+            state.setPaused(kind.groupType, true);
+        Thread.sleep(INTERVALS[INTERVALS.length - 1]);
+
+        int[] before = new int[KINDS.length];
+        for (int g = 0; g < KINDS.length; g++)
+            before[g] = reads[g].get();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long worker = workerId();
+        long cpu = threads.getThreadCpuTime(worker);
+        Thread.sleep(IDLE_TIME);
+        double used = (threads.getThreadCpuTime(worker) - cpu) / (IDLE_TIME * 1e6);
+
+        boolean passed = true;
+        for (int g = 0; g < KINDS.length; g++) {
+            if (reads[g].get() != before[g]) {
+                System.out.println(KINDS[g].name() + ": read while every group was paused");
+                passed = false;
+            }
+        }
+        System.out.printf("idle  worker used %.3f%% of a CPU%n", used * 100);
+        if (used > IDLE_CPU) {
+            System.out.println("worker did not park while every group was paused");
+            passed = false;
+        }
+        return passed;
+    }
+
+    // Shuts down in the middle of a slow read; nothing may be read after the last task
+    private static boolean checkShutdown(PollScheduler scheduler) throws InterruptedException {
+        slow = true;
+        for (Device.Kind kind : KINDS)
+            state.setPaused(kind.groupType, false);
+        Thread.sleep(INTERVALS[INTERVALS.length - 1] + SLOW_READ / 2);
+
+        final int[] atLast = new int[KINDS.length];
+        final AtomicInteger lastRuns = new AtomicInteger();
+        scheduler.shutdown(new Runnable() {
+            public void run() {
+                for (int g = 0; g < KINDS.length; g++)
+                    atLast[g] = reads[g].get();
+                lastRuns.incrementAndGet();
+            }
+        });
+        Thread.sleep(IDLE_TIME / 10);
+
+        boolean passed = lastRuns.get() == 1;
+        if (!passed)
+            System.out.println("shutdown task ran " + lastRuns.get() + " times");
+        for (int g = 0; g < KINDS.length; g++) {
+            if (reads[g].get() != atLast[g]) {
+                System.out.println(KINDS[g].name() + ": read after the shutdown task");
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static long workerId() {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("PollScheduler"))
+                return thread.getId();
+        throw new IllegalStateException("no PollScheduler worker");
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold start cost of device discovery, before and after the property index:
+ *
+ *   bench/run.sh PropertyIndexBench [<getprop dump>]
+ *
+ * The dump is the output of getprop captured on a board; without one, a
+ * synthetic dump of BOARD_PROPERTIES lines shaped like a board's is used.
+ * getprop itself is stood in for by cat on the dump, so both paths pay for
+ * a real process fork per run.
+ *
+ *   startup.old  what prepareListData() did: one getprop per category, each
+ *                scanned in full with String.contains()
+ *   startup.new  PropertyIndex.load(): a single run indexed by category,
+ *                then the four category lookups
+ *   parse.*      the same two paths on the dump text without the forks
+ */
+public class PropertyIndexBench {
+    private static final String[] CATEGORIES = {"led.", "gpio.", "hwmon.", "pwm."};
+    private static final int BOARD_PROPERTIES = 600;
+
+    public static void main(String[] args) throws Exception {
+        File dump;
+        boolean generated = args.length == 0;
+        if (generated) {
+            dump = File.createTempFile("getprop", ".txt");
+            writeSyntheticDump(dump);
+        } else {
+            dump = new File(args[0]);
+        }
+
+        try {
+            final String[] command = {"cat", dump.getPath()};
+            final String text = new String(Files.readAllBytes(dump.toPath()), Charset.forName("UTF-8"));
+            System.out.println(dump + ": " + text.split("\n").length + " properties"
+                    + (generated ? " (synthetic)" : ""));
+
+            // Both paths must find the same devices
+            for (String category : CATEGORIES) {
+                List<String> old = oldPropReader(new BufferedReader(new StringReader(text)), category);
+                List<String> indexed = PropertyIndex.parse(text).getCategory(category);
+                if (!old.containsAll(indexed))
+                    throw new AssertionError(category + ": " + indexed + " not in " + old);
+            }
+
+            Bench.printHeader();
+            Bench.run("startup.old", new Bench.Op() {
+                public int run(int invocation) throws IOException {
+                    int found = 0;
+                    for (String category : CATEGORIES) {
+                        Process proc = Runtime.getRuntime().exec(command);
+                        try {
+                            found += oldPropReader(new BufferedReader(
+                                    new InputStreamReader(proc.getInputStream())), category).size();
+                        } finally {
+                            proc.destroy();
+                        }
+                    }
+                    return found;
+                }
+            });
+            Bench.run("startup.new", new Bench.Op() {
+                public int run(int invocation) {
+                    PropertyIndex index = PropertyIndex.load(command);
+                    int found = 0;
+                    for (String category : CATEGORIES)
+                        found += index.getCategory(category).size();
+                    return found;
+                }
+            });
+            Bench.run("parse.old", new Bench.Op() {
+                public int run(int invocation) throws IOException {
+                    int found = 0;
+                    for (String category : CATEGORIES)
+                        found += oldPropReader(new BufferedReader(new StringReader(text)),
+                                category).size();
+                    return found;
+                }
+            });
+            Bench.run("parse.new", new Bench.Op() {
+                public int run(int invocation) {
+                    PropertyIndex index = PropertyIndex.parse(text);
+                    int found = 0;
+                    for (String category : CATEGORIES)
+                        found += index.getCategory(category).size();
+                    return found;
+                }
+            });
+        } finally {
+            if (generated)
+                dump.delete();
+        }
+    }
+
+    // MainActivity.propReader() as it was before the index
+    private static List<String> oldPropReader(BufferedReader br, String typePrefix)
+            throws IOException {
+        ArrayList<String> propsFound = new ArrayList<String>();
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.contains(typePrefix))
+                propsFound.add(line);
+        }
+        br.close();
+        return propsFound;
+    }
+
+    // The board's devices among the usual Android system properties
+    private static void writeSyntheticDump(File file) throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write("[hw.led.user1]: [user1]\n[hw.led.user2]: [user2]\n");
+            for (int i = 0; i < 16; i++)
+                out.write("[hw.gpio.dio" + i + "]: [" + (240 + i) + "]\n");
+            String[] hwmons = {"temp", "vin", "fan_tach", "3p3", "2p5", "1p8", "1p2", "core"};
+            for (String hwmon : hwmons)
+                out.write("[hw.hwmon." + hwmon + "]: [/sys/class/hwmon/hwmon0/" + hwmon + "_input]\n");
+            out.write("[hw.pwm.pwm2]: [pwm2]\n[hw.pwm.pwm3]: [pwm3]\n");
+            String[] prefixes = {"ro.build.", "ro.product.", "persist.sys.", "init.svc.",
+                    "dalvik.vm.", "net.", "sys.usb.", "ro.boot."};
+            for (int i = 28; i < BOARD_PROPERTIES; i++)
+                out.write("[" + prefixes[i % prefixes.length] + "prop" + i + "]: [value " + i + "]\n");
+        } finally {
+            out.close();
+        }
+    }
+}
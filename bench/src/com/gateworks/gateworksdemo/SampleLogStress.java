@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import android.os.SystemClock;
+
+/**
+ * Sustained rate test of SampleLog against a local directory:
+ *
+ *   bench/run.sh SampleLogStress [-r <samples/s>] [-t <seconds>] [-c 0|1]
+ *                                [-s <KB per file>] [-d <dir>]
+ *
+ * A sampler thread records at the given rate for the given time, spread over
+ * CHANNELS channels the way the gpio and hwmon pollers would, with the
+ * sample's sequence number as its value. Files are rotated at the given
+ * size and all of them are kept. Afterwards every file is read back with
+ * SampleLogReader and checked: each sample must be on the channel its value
+ * belongs to, values must keep increasing, and every recorded sample must be
+ * found. One file is also converted to CSV. The test fails if more than
+ * MAX_DROPPED of the samples were dropped because the writer fell behind.
+ */
+public class SampleLogStress {
+    private static final int CHANNELS = 24;
+    private static final double MAX_DROPPED = 0.001;
+
+    public static void main(String[] args) throws Exception {
+        int rate = 100000;
+        int seconds = 10;
+        boolean compress = true;
+        int fileSize = 4096; // KB
+        File dir = null;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (args[i].equals("-r"))
+                    rate = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-t"))
+                    seconds = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-c"))
+                    compress = args[i + 1].equals("1");
+                else if (args[i].equals("-s"))
+                    fileSize = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-d"))
+                    dir = new File(args[i + 1]);
+                else
+                    throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("usage: SampleLogStress [-r <samples/s>] [-t <seconds>] [-c 0|1]"
+                    + " [-s <KB per file>] [-d <dir>]");
+            System.exit(1);
+        }
+        boolean keep = dir != null;
+        if (dir == null)
+            dir = new File(System.getProperty("java.io.tmpdir"), "gwlog-" + System.nanoTime());
+
+        boolean passed;
+        try {
+            passed = run(dir, rate, seconds, compress, fileSize * 1024L);
+        } finally {
+            if (!keep)
+                delete(dir);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(File dir, int rate, int seconds, boolean compress, long fileSize)
+            throws Exception {
+        SampleLog log = SampleLog.start(dir, compress, fileSize, Integer.MAX_VALUE);
+        int[] channels = new int[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++)
+            channels[i] = SampleLog.channel((i < 16 ? "gpio.dio" : "hwmon.in") + i);
+
+        // Records whatever is due every millisecond, like a tick driven sampler
+        long start = SystemClock.elapsedRealtime();
+        long end = start + seconds * 1000L;
+        long sent = 0;
+        long worstLag = 0;
+        for (long now = start; now < end; now = SystemClock.elapsedRealtime()) {
+            long due = (now - start) * rate / 1000;
+            long t = System.nanoTime();
+            for (; sent < due; sent++)
+                log.record(channels[(int) (sent % CHANNELS)], now, (int) sent);
+            worstLag = Math.max(worstLag, System.nanoTime() - t);
+            Thread.sleep(1);
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        SampleLog.stop();
+        if (!log.awaitClosed(30000)) {
+            System.out.println("FAIL: writer did not finish");
+            return false;
+        }
+
+        long recorded = log.getRecordedCount();
+        long dropped = log.getDroppedCount();
+        System.out.printf("Recorded %d samples in %d ms (%.0f/s), %d dropped, "
+                + "longest tick %d us%n", recorded, elapsed, recorded * 1000.0 / elapsed,
+                dropped, worstLag / 1000);
+
+        File[] files = dir.listFiles();
+        if (files == null || files.length == 0) {
+            System.out.println("FAIL: no files written");
+            return false;
+        }
+        Arrays.sort(files);
+        long bytes = 0;
+        for (File file : files)
+            bytes += file.length();
+        System.out.printf("%d files, %d bytes (%.1f bytes per sample%s)%n", files.length, bytes,
+                (double) bytes / recorded, compress ? ", deflated" : "");
+
+        final long[] read = {0};
+        final long[] last = {-1};
+        final String[] error = {null};
+        for (File file : files) {
+            SampleLogReader.read(file, new SampleLogReader.Listener() {
+                public void onSample(String channel, long time, int value) {
+                    int expected = value % CHANNELS;
+                    if (error[0] == null && !channel.equals(
+                            (expected < 16 ? "gpio.dio" : "hwmon.in") + expected))
+                        error[0] = "sample " + value + " on channel " + channel;
+                    if (error[0] == null && value <= last[0])
+                        error[0] = "sample " + value + " after " + last[0];
+                    last[0] = value;
+                    read[0]++;
+                }
+            });
+        }
+        if (error[0] == null && read[0] != recorded)
+            error[0] = "read " + read[0] + " of " + recorded + " samples";
+        if (error[0] == null && dropped > (recorded + dropped) * MAX_DROPPED)
+            error[0] = "dropped " + dropped + " samples";
+
+        CountingWriter csv = new CountingWriter();
+        SampleLogReader.toCsv(files[0], csv);
+        System.out.println(files[0].getName() + " converts to " + csv.lines + " CSV lines");
+
+        System.out.println(error[0] == null ? "PASS" : "FAIL: " + error[0]);
+        return error[0] == null;
+    }
+
+    private static class CountingWriter extends Writer {
+        long lines;
+
+        public void write(char[] buf, int off, int len) {
+            for (int i = off; i < off + len; i++)
+                if (buf[i] == '\n')
+                    lines++;
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        if (file.exists() && !file.delete())
+            throw new IOException("Unable to delete " + file);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import android.graphics.Canvas;
+
+/**
+ * Per frame cost of the HWMON sparklines with many sensors on screen:
+ *
+ *   bench/run.sh SparklineBench [<sensors>...]
+ *
+ * Each operation is one frame: every sensor's SampleRing gets a sample, and
+ * every row is rebound and drawn if its line changed, as the adapter does on
+ * a sampling pass. Two cases are measured for each sensor count (by default
+ * 32 and 64):
+ *
+ *   changed  every sensor moves, so every line is rebuilt and drawn
+ *   steady   every sensor holds its value, so nothing is rebuilt or drawn
+ *
+ * The canvas is a plain JVM stand-in that draws nothing, so this is the CPU
+ * the sparklines cost the UI thread per frame, not the GPU's rasterization;
+ * that part has to be measured on a board. The bytes allocated per frame are
+ * reported as well, and must be zero.
+ */
+public class SparklineBench {
+    private static final int WIDTH = 240, HEIGHT = 55; // px, half a list_hwmon row at mdpi
+    private static final int HISTORY = 3600; // samples, SamplingService's default
+    private static final double FRAME_BUDGET = 1e9 / 60; // ns
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0)
+            args = new String[] {"32", "64"};
+
+        Bench.printHeader();
+        boolean passed = true;
+        for (String arg : args) {
+            int sensors = Integer.parseInt(arg);
+            passed &= run(sensors, true);
+            passed &= run(sensors, false);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static boolean run(int sensors, final boolean changing) throws Exception {
+        final SampleRing[] rings = new SampleRing[sensors];
+        final SparklineView[] views = new SparklineView[sensors];
+        for (int i = 0; i < sensors; i++) {
+            rings[i] = new SampleRing(HISTORY);
+            for (int s = 0; s < SparklineView.SAMPLES; s++)
+                rings[i].add(s, changing ? value(i, s) : 45000);
+            views[i] = new SparklineView(null);
+            views[i].layout(0, 0, WIDTH, HEIGHT);
+            views[i].setSamples(rings[i]);
+        }
+        final Canvas canvas = new Canvas();
+        Bench.Op frame = new Bench.Op() {
+            public int run(int invocation) {
+                int drawn = 0;
+                for (int i = 0; i < rings.length; i++) {
+                    rings[i].add(invocation, changing ? value(i, invocation) : 45000);
+                    if (views[i].setSamples(rings[i])) {
+                        views[i].draw(canvas);
+                        drawn++;
+                    }
+                }
+                return drawn;
+            }
+        };
+
+        String name = "frame." + (changing ? "changed." : "steady.") + sensors;
+        double ns = Bench.run(name, frame);
+
+        long allocated = -1;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+            long id = Thread.currentThread().getId();
+            long before = mx.getThreadAllocatedBytes(id);
+            for (int f = 0; f < 10000; f++)
+                frame.run(f);
+            allocated = mx.getThreadAllocatedBytes(id) - before;
+        }
+        System.out.printf("%s: %.2f%% of a 60 Hz frame, %.2f us per sensor, %d bytes"
+                + " allocated in 10000 frames%n", name, 100 * ns / FRAME_BUDGET,
+                ns / sensors / 1000, allocated);
+        return allocated <= 0;
+    }
+
+    // A slow wave, different per sensor
+    private static int value(int sensor, int sample) {
+        return 40000 + (int) (5000 * Math.sin((sample + sensor * 7) * 0.1));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Cost of reading an integer attribute, reopening it every time versus
+ * re-reading a handle SysfsAttributeCache keeps open:
+ *
+ *   bench/run.sh SysfsCacheBench [<attribute>...]
+ *
+ * Each operation reads the next of a set of attributes, cycling through them
+ * the way a polling pass does. Three ways of reading are compared side by side:
+ *
+ *   reopen.reader  BufferedReader over a FileReader, readLine and parseInt,
+ *                  as the backends read attributes
+ *   reopen.raw     open, read into a byte array and close, the least a
+ *                  reopening read can cost
+ *   cached         SysfsAttributeCache.readInt on a handle kept open
+ *
+ * By default the attributes are the value and input files of a SysfsHardware
+ * tree on /dev/shm, which is removed afterwards. Attributes given on the
+ * command line, e.g. real sysfs files, are measured as well.
+ */
+public class SysfsCacheBench {
+    private static final String[] GPIOS = {
+            "dio0", "dio1", "dio2", "dio3", "dio4", "dio5", "dio6", "dio7",
+            "dio8", "dio9", "dio10", "dio11", "dio12", "dio13", "dio14", "dio15"};
+    private static final String[] HWMONS = {
+            "temp", "vin", "fan_tach", "3p3", "2p5", "1p8", "1p2", "core"};
+
+    public static void main(String[] args) throws Exception {
+        File shm = new File("/dev/shm");
+        File root = new File(shm.isDirectory() && shm.canWrite() ? shm :
+                new File(System.getProperty("java.io.tmpdir")), "gwcache-" + System.nanoTime());
+        String[] paths = new String[GPIOS.length + HWMONS.length];
+        try {
+            SysfsHardware hw = SysfsHardware.populate(root.getPath(), new String[0], GPIOS,
+                    HWMONS, new String[0]);
+            int n = 0;
+            for (String name : GPIOS)
+                paths[n++] = hw.getGpioDir(name) + "/value";
+            for (String name : HWMONS)
+                paths[n++] = root + "/class/hwmon/" + name + "/input";
+
+            Bench.printHeader();
+            run("tmpfs", paths);
+        } finally {
+            delete(root);
+        }
+        if (args.length > 0)
+            run("args", args);
+    }
+
+    private static void run(String name, final String[] paths) throws Exception {
+        final int count = paths.length;
+        double reader = Bench.run(name + ".reopen.reader", new Bench.Op() {
+            public int run(int invocation) throws IOException {
+                BufferedReader br = new BufferedReader(new FileReader(paths[invocation % count]));
+                try {
+                    return Integer.parseInt(br.readLine().trim());
+                } finally {
+                    br.close();
+                }
+            }
+        });
+        final byte[] bytes = new byte[32];
+        double raw = Bench.run(name + ".reopen.raw", new Bench.Op() {
+            public int run(int invocation) throws IOException {
+                RandomAccessFile file = new RandomAccessFile(paths[invocation % count], "r");
+                try {
+                    return file.read(bytes);
+                } finally {
+                    file.close();
+                }
+            }
+        });
+        final SysfsAttributeCache cache = new SysfsAttributeCache(64);
+        double cached = Bench.run(name + ".cached", new Bench.Op() {
+            public int run(int invocation) {
+                return cache.readInt(paths[invocation % count], Device.Kind.GPIO.groupType);
+            }
+        });
+        cache.evictAll();
+        System.out.printf("%s: %d attributes, cached reads %.1fx faster than reopen.reader,"
+                + " %.1fx faster than reopen.raw%n", name, count, reader / cached, raw / cached);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
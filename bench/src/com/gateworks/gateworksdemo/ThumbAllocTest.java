@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gateworks.gateworksdemo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Checks that dragging a PWM slider does not allocate once every label has
+ * been rendered:
+ *
+ *   bench/run.sh ThumbAllocTest [<sweeps>]
+ *
+ * ROWS PWM rows share one ThumbRenderer, each with its own ThumbDrawable. A
+ * drag is simulated the way the adapter's progress listener and the SeekBar
+ * handle it: every progress event sets the row's percentage and the thumb is
+ * drawn. The first sweep over 0-100% may render each label once; after that
+ * SWEEPS further sweeps, half of them stepwise and half in random jumps, must
+ * allocate nothing on the dragging thread. The android.graphics classes are
+ * plain JVM stand-ins, so this counts the renderer's own allocations, not the
+ * cost of real bitmaps.
+ */
+public class ThumbAllocTest {
+    private static final int ROWS = 2;
+    private static final int SWEEPS = 1000;
+    private static final int THUMB_SIZE = 32;
+
+    public static void main(String[] args) {
+        int sweeps = args.length > 0 ? Integer.parseInt(args[0]) : SWEEPS;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("This JVM cannot count allocated bytes per thread");
+            System.exit(1);
+        }
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+        long id = Thread.currentThread().getId();
+
+        ThumbRenderer renderer = new ThumbRenderer(new Drawable() {
+            public void draw(Canvas canvas) {
+            }
+
+            public int getIntrinsicWidth() {
+                return THUMB_SIZE;
+            }
+
+            public int getIntrinsicHeight() {
+                return THUMB_SIZE;
+            }
+
+            public void setAlpha(int alpha) {
+            }
+
+            public void setColorFilter(ColorFilter colorFilter) {
+            }
+
+            public int getOpacity() {
+                return PixelFormat.TRANSLUCENT;
+            }
+        });
+        ThumbRenderer.ThumbDrawable[] thumbs = new ThumbRenderer.ThumbDrawable[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            thumbs[row] = renderer.newThumb();
+            thumbs[row].setBounds(0, 0, THUMB_SIZE, THUMB_SIZE);
+        }
+        Canvas canvas = new Canvas();
+        Random random = new Random(1);
+
+        long before = mx.getThreadAllocatedBytes(id);
+        sweep(thumbs, canvas, null);
+        long first = mx.getThreadAllocatedBytes(id) - before;
+
+        // Sweep enough to get the drag path compiled before counting
+        for (int i = 0; i < sweeps; i++)
+            sweep(thumbs, canvas, (i & 1) != 0 ? random : null);
+        before = mx.getThreadAllocatedBytes(id);
+        for (int i = 0; i < sweeps; i++)
+            sweep(thumbs, canvas, (i & 1) != 0 ? random : null);
+        long dragged = mx.getThreadAllocatedBytes(id) - before;
+
+        Set<Bitmap> rendered = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+        for (int percent = 0; percent <= 100; percent++)
+            rendered.add(renderer.get(percent));
+
+        long events = (long) sweeps * ROWS * 202;
+        System.out.printf("first sweep: %d bytes, %d labels rendered%n", first, rendered.size());
+        System.out.printf("%d sweeps, %d progress events: %d bytes%n", sweeps, events, dragged);
+        boolean passed = dragged == 0 && rendered.size() == 101;
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Drags every row from 0% to 100% and back, one percent at a time or in
+    // random jumps
+    private static void sweep(ThumbRenderer.ThumbDrawable[] thumbs, Canvas canvas, Random jumps) {
+        for (int step = 0; step < 202; step++) {
+            int percent = step <= 100 ? step : 201 - step;
+            if (jumps != null)
+                percent = jumps.nextInt(101);
+            for (ThumbRenderer.ThumbDrawable thumb : thumbs) {
+                thumb.setPercent(percent);
+                thumb.draw(canvas);
+            }
+        }
+    }
+}
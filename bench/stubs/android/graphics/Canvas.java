@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.graphics;
+
+// Plain JVM stand-in for android.graphics.Canvas; drawing does nothing
+public class Canvas {
+    private Bitmap bitmap;
+
+    public Canvas() {
+    }
+
+    public Canvas(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public void setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public int getWidth() {
+        return bitmap == null ? 0 : bitmap.getWidth();
+    }
+
+    public int getHeight() {
+        return bitmap == null ? 0 : bitmap.getHeight();
+    }
+
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+    }
+
+    public void drawLines(float[] points, int offset, int count, Paint paint) {
+    }
+
+    public void drawText(String text, float x, float y, Paint paint) {
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.graphics.drawable;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Rect;
+
+// Plain JVM stand-in for android.graphics.drawable.Drawable, without callbacks
+public abstract class Drawable {
+    private final Rect bounds = new Rect();
+
+    public abstract void draw(Canvas canvas);
+
+    public abstract void setAlpha(int alpha);
+
+    public abstract void setColorFilter(ColorFilter colorFilter);
+
+    public abstract int getOpacity();
+
+    public void setBounds(int left, int top, int right, int bottom) {
+        bounds.set(left, top, right, bottom);
+    }
+
+    public final Rect getBounds() {
+        return bounds;
+    }
+
+    public int getIntrinsicWidth() {
+        return -1;
+    }
+
+    public int getIntrinsicHeight() {
+        return -1;
+    }
+
+    public void invalidateSelf() {
+    }
+}
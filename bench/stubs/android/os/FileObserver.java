@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.os;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// Plain JVM stand-in for android.os.FileObserver on a java.nio WatchService. Only
+// entries created in or deleted from the directory are reported, moves show up as
+// those; events arrive on a thread of the observer's own.
+public abstract class FileObserver {
+    public static final int CREATE = 0x100;
+    public static final int DELETE = 0x200;
+    public static final int MOVED_FROM = 0x040;
+    public static final int MOVED_TO = 0x080;
+
+    private final String path;
+    private final int mask;
+    private WatchService watcher;
+
+    public FileObserver(String path, int mask) {
+        this.path = path;
+        this.mask = mask;
+    }
+
+    public abstract void onEvent(int event, String path);
+
+    public synchronized void startWatching() {
+        if (watcher != null)
+            return;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            Paths.get(path).register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            // Like inotify on a missing directory: nothing is reported
+            return;
+        }
+        final WatchService service = watcher;
+        Thread thread = new Thread("FileObserver " + path) {
+            public void run() {
+                dispatch(service);
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher == null)
+            return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        watcher = null;
+    }
+
+    private void dispatch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    int type = event.kind() == StandardWatchEventKinds.ENTRY_CREATE ? CREATE :
+                            event.kind() == StandardWatchEventKinds.ENTRY_DELETE ? DELETE : 0;
+                    if ((type & mask) != 0)
+                        onEvent(type, ((Path) event.context()).toString());
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+}
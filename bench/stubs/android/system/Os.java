@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.system;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Plain JVM stand-in for the few android.system.Os calls the gpio watcher
+ * makes, enough to run it against a fake sysfs tree.
+ *
+ * Three kinds of descriptor are emulated. Regular files are positional reads
+ * only and never report POLLPRI, like a sysfs attribute whose edge was not
+ * armed. FIFOs are opened read-write so that open does not block and the
+ * writer side never hangs up; they cannot be pread and report POLLIN while
+ * data is queued. Pipes from pipe() are in-memory buffers. poll() checks
+ * every descriptor each millisecond until one is ready or the timeout runs out.
+ */
+public final class Os {
+    private static final Map<FileDescriptor, Handle> handles =
+            new IdentityHashMap<FileDescriptor, Handle>();
+
+    private static class Handle {
+        RandomAccessFile file; // regular file or FIFO
+        boolean fifo;
+        FileInputStream fifoIn; // for FIONREAD through available()
+        Pipe pipe; // either end of a pipe()
+        boolean readEnd;
+
+        // Bytes that can be read without blocking
+        int available() throws IOException {
+            if (pipe != null)
+                return readEnd ? pipe.size() : 0;
+            if (fifo)
+                return fifoIn.available();
+            return 0;
+        }
+    }
+
+    private static class Pipe {
+        private final byte[] data = new byte[4096];
+        private int count;
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized int write(byte[] bytes, int offset, int len) {
+            len = Math.min(len, data.length - count);
+            System.arraycopy(bytes, offset, data, count, len);
+            count += len;
+            return len;
+        }
+
+        synchronized int read(byte[] bytes, int offset, int len) {
+            len = Math.min(len, count);
+            System.arraycopy(data, 0, bytes, offset, len);
+            System.arraycopy(data, len, data, 0, count - len);
+            count -= len;
+            return len;
+        }
+    }
+
+    private Os() {
+    }
+
+    public static FileDescriptor[] pipe() throws ErrnoException {
+        Pipe pipe = new Pipe();
+        Handle read = new Handle();
+        read.pipe = pipe;
+        read.readEnd = true;
+        Handle write = new Handle();
+        write.pipe = pipe;
+        return new FileDescriptor[] {register(read), register(write)};
+    }
+
+    public static FileDescriptor open(String path, int flags, int mode) throws ErrnoException {
+        if (!Files.exists(Paths.get(path)))
+            throw new ErrnoException("open", OsConstants.ENOENT);
+        Handle handle = new Handle();
+        handle.fifo = !Files.isRegularFile(Paths.get(path));
+        boolean readOnly = (flags & 3) == OsConstants.O_RDONLY;
+        try {
+            handle.file = new RandomAccessFile(path, readOnly && !handle.fifo ? "r" : "rw");
+            if (handle.fifo)
+                handle.fifoIn = new FileInputStream(handle.file.getFD());
+        } catch (IOException e) {
+            throw new ErrnoException("open", OsConstants.ENOENT);
+        }
+        return register(handle);
+    }
+
+    public static int pread(FileDescriptor fd, byte[] bytes, int offset, int len, long position)
+            throws ErrnoException, InterruptedIOException {
+        Handle handle = lookup(fd, "pread");
+        if (handle.file == null || handle.fifo)
+            throw new ErrnoException("pread", OsConstants.ESPIPE);
+        try {
+            int n = handle.file.getChannel().read(ByteBuffer.wrap(bytes, offset, len), position);
+            return Math.max(n, 0);
+        } catch (IOException e) {
+            throw new ErrnoException("pread", OsConstants.EBADF);
+        }
+    }
+
+    public static int read(FileDescriptor fd, byte[] bytes, int offset, int len)
+            throws ErrnoException, InterruptedIOException {
+        Handle handle = lookup(fd, "read");
+        try {
+            if (handle.pipe != null || handle.fifo) {
+                // Non-blocking, as the watcher's descriptors are
+                int available = handle.available();
+                if (available == 0)
+                    throw new ErrnoException("read", OsConstants.EAGAIN);
+                len = Math.min(len, available);
+                if (handle.pipe != null)
+                    return handle.pipe.read(bytes, offset, len);
+            }
+            return Math.max(handle.file.read(bytes, offset, len), 0);
+        } catch (IOException e) {
+            throw new ErrnoException("read", OsConstants.EBADF);
+        }
+    }
+
+    public static int write(FileDescriptor fd, byte[] bytes, int offset, int len)
+            throws ErrnoException, InterruptedIOException {
+        Handle handle = lookup(fd, "write");
+        if (handle.pipe != null) {
+            int n = handle.pipe.write(bytes, offset, len);
+            if (n == 0)
+                throw new ErrnoException("write", OsConstants.EAGAIN);
+            return n;
+        }
+        try {
+            handle.file.write(bytes, offset, len);
+            return len;
+        } catch (IOException e) {
+            throw new ErrnoException("write", OsConstants.EBADF);
+        }
+    }
+
+    public static int poll(StructPollfd[] fds, int timeoutMs) throws ErrnoException {
+        long deadline = timeoutMs < 0 ? Long.MAX_VALUE :
+                System.nanoTime() / 1000000 + timeoutMs;
+        while (true) {
+            int ready = 0;
+            for (StructPollfd fd : fds) {
+                fd.revents = 0;
+                try {
+                    if (lookup(fd.fd, "poll").available() > 0)
+                        fd.revents = (short) (fd.events & OsConstants.POLLIN);
+                } catch (IOException e) {
+                    fd.revents = (short) OsConstants.POLLERR;
+                }
+                if (fd.revents != 0)
+                    ready++;
+            }
+            if (ready > 0 || System.nanoTime() / 1000000 >= deadline)
+                return ready;
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new ErrnoException("poll", OsConstants.EINTR);
+            }
+        }
+    }
+
+    public static void close(FileDescriptor fd) throws ErrnoException {
+        Handle handle;
+        synchronized (handles) {
+            handle = handles.remove(fd);
+        }
+        if (handle == null)
+            throw new ErrnoException("close", OsConstants.EBADF);
+        try {
+            if (handle.file != null)
+                handle.file.close();
+        } catch (IOException e) {
+            throw new ErrnoException("close", OsConstants.EBADF);
+        }
+    }
+
+    private static FileDescriptor register(Handle handle) {
+        FileDescriptor fd = new FileDescriptor();
+        synchronized (handles) {
+            handles.put(fd, handle);
+        }
+        return fd;
+    }
+
+    private static Handle lookup(FileDescriptor fd, String function) throws ErrnoException {
+        Handle handle;
+        synchronized (handles) {
+            handle = handles.get(fd);
+        }
+        if (handle == null)
+            throw new ErrnoException(function, OsConstants.EBADF);
+        return handle;
+    }
+}
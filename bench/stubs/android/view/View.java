@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+// Plain JVM stand-in for android.view.View: layout sets the size, draw calls
+// onDraw, and invalidations are only counted
+public class View {
+    private int width, height;
+    private int invalidations;
+
+    public View(Context context) {
+    }
+
+    public View(Context context, AttributeSet attrs) {
+    }
+
+    public final int getWidth() {
+        return width;
+    }
+
+    public final int getHeight() {
+        return height;
+    }
+
+    public void layout(int left, int top, int right, int bottom) {
+        int oldWidth = width;
+        int oldHeight = height;
+        width = right - left;
+        height = bottom - top;
+        if (width != oldWidth || height != oldHeight)
+            onSizeChanged(width, height, oldWidth, oldHeight);
+    }
+
+    public void invalidate() {
+        invalidations++;
+    }
+
+    public int getInvalidations() {
+        return invalidations;
+    }
+
+    public void draw(Canvas canvas) {
+        onDraw(canvas);
+    }
+
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    }
+
+    protected void onDraw(Canvas canvas) {
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksutil;
+
+// GateworksUtil only works on a board; the benchmarks install another backend
+// with Hal.set(), so none of this is ever called
+public class GeneralPurposeIO {
+    public enum Direction { IN, OUT }
+
+    public static int getGpioValue(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setGpioValue(String name, int value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static Direction getGpioDirection(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setGpioDirection(String name, Direction direction) {
+        throw new UnsupportedOperationException();
+    }
+}
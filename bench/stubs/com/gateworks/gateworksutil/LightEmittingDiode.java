@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksutil;
+
+import java.util.List;
+
+// See GeneralPurposeIO
+public class LightEmittingDiode {
+    public static List<String> getAllLedTriggers(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static String getLedTrigger(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setLedTrigger(String name, String trigger) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static boolean getLedValue(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setLedValue(String name, boolean on) {
+        throw new UnsupportedOperationException();
+    }
+}
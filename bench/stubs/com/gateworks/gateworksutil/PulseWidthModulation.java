@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksutil;
+
+// See GeneralPurposeIO
+public class PulseWidthModulation {
+    public static boolean getEnabled(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setEnabled(String name, boolean enabled) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static int getPeriod(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setPeriod(String name, int period) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static int getDutyCycle(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void setDutyCycle(String name, int dutyCycle) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.util.Log;
+
+/**
+ * Threshold alarms on hwmon readings, checked on every sample the sampling
+ * service takes, whether or not the list is showing the sensor.
+ *
+ * Rules come from persist.gw.alarm.<n> properties of the form
+ * "<sensor> >|< <raise> <clear> [<action>,...]", for example
+ *
+ *   persist.gw.alarm.0 = temp > 85000 80000 notify,led:user1:heartbeat
+ *   persist.gw.alarm.1 = vin < 11000 11500 gpio:dio0:1
+ *
+ * A ">" rule raises once a reading goes above raise and clears when it is
+ * back at or below clear; a "<" rule works the other way round. The gap
+ * between the two keeps a noisy sensor from flapping. A rule without
+ * actions just notifies. Actions run on the sampling thread as soon as the
+ * reading that raised or cleared the rule comes in:
+ *
+ *   notify                 status bar notification, removed on clear
+ *   led:<name>:<trigger>   sets the LED's trigger, the previous one on clear
+ *   gpio:<name>:<0|1>      drives the gpio, the opposite value on clear
+ *
+ * Rules are compiled into primitive arrays grouped by sensor, so checking a
+ * reading costs a couple of int comparisons per rule on that sensor and
+ * allocates nothing. Only a raise or clear does any further work.
+ */
+public class AlarmRules {
+    private static final String TAG = "AlarmRules";
+    static final String PROPERTY_PREFIX = "persist.gw.alarm.";
+
+    public interface Notifier {
+        // Called on the sampling thread when a rule with a notify action raises or clears
+        void onAlarm(int rule, String description, int value, boolean raised);
+    }
+
+    private static class Action {
+        static final int NOTIFY = 0;
+        static final int LED = 1;
+        static final int GPIO = 2;
+
+        final int type;
+        final String device;
+        final String value;
+        String restore; // trigger the LED had before the rule raised
+
+        Action(int type, String device, String value) {
+            this.type = type;
+            this.device = device;
+            this.value = value;
+        }
+    }
+
+    // The rules of sensor s are ruleStart[s] up to ruleStart[s + 1]
+    private final int[] ruleStart;
+    private final boolean[] above;
+    private final int[] raiseAt;
+    private final int[] clearAt;
+    private final boolean[] raised;
+    private final String[] descriptions;
+    private final Action[][] actions;
+    private final Notifier notifier;
+
+    private volatile long evaluations;
+    private volatile int raiseCount;
+
+    private AlarmRules(int sensors, int rules, Notifier notifier) {
+        ruleStart = new int[sensors + 1];
+        above = new boolean[rules];
+        raiseAt = new int[rules];
+        clearAt = new int[rules];
+        raised = new boolean[rules];
+        descriptions = new String[rules];
+        actions = new Action[rules][];
+        this.notifier = notifier;
+    }
+
+    // Compiles the rules from the properties that name one of the given sensors
+    public static AlarmRules load(String[] sensors, Notifier notifier) {
+        return load(sensors, PropertyIndex.get(), notifier);
+    }
+
+    static AlarmRules load(String[] sensors, PropertyIndex props, Notifier notifier) {
+        List<String> sensorList = Arrays.asList(sensors);
+        ArrayList<ArrayList<String>> bySensor = new ArrayList<ArrayList<String>>();
+        for (int s = 0; s < sensors.length; s++)
+            bySensor.add(new ArrayList<String>());
+
+        int count = 0;
+        for (String line : props.getCategory("alarm.")) {
+            if (!line.startsWith("[" + PROPERTY_PREFIX))
+                continue;
+            String rule = PropertyIndex.valueOf(line).trim();
+            int sensor = sensorList.indexOf(rule.split("\\s+")[0]);
+            if (sensor < 0) {
+                Log.i(TAG, "No sensor for rule: " + rule);
+                continue;
+            }
+            bySensor.get(sensor).add(rule);
+            count++;
+        }
+
+        AlarmRules rules = new AlarmRules(sensors.length, count, notifier);
+        int r = 0;
+        for (int s = 0; s < sensors.length; s++) {
+            rules.ruleStart[s] = r;
+            for (String rule : bySensor.get(s))
+                if (rules.compile(r, rule))
+                    r++;
+        }
+        rules.ruleStart[sensors.length] = r;
+        return rules;
+    }
+
+    // Fills in slot r from "<sensor> >|< <raise> <clear> [<action>,...]"; false if malformed
+    private boolean compile(int r, String rule) {
+        String[] args = rule.split("\\s+");
+        try {
+            if (args.length < 4 || args.length > 5 || !(args[1].equals(">") || args[1].equals("<")))
+                throw new IllegalArgumentException("usage");
+            above[r] = args[1].equals(">");
+            raiseAt[r] = Integer.parseInt(args[2]);
+            clearAt[r] = Integer.parseInt(args[3]);
+            if (above[r] ? clearAt[r] > raiseAt[r] : clearAt[r] < raiseAt[r])
+                throw new IllegalArgumentException("clear is past raise");
+
+            String[] specs = args.length > 4 ? args[4].split(",") : new String[] {"notify"};
+            actions[r] = new Action[specs.length];
+            for (int i = 0; i < specs.length; i++)
+                actions[r][i] = parseAction(specs[i]);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring rule \"" + rule + "\": " + e.getMessage());
+            return false;
+        }
+        descriptions[r] = rule;
+        return true;
+    }
+
+    private static Action parseAction(String spec) {
+        if (spec.equals("notify"))
+            return new Action(Action.NOTIFY, null, null);
+        String[] parts = spec.split(":");
+        if (parts.length == 3 && parts[0].equals("led"))
+            return new Action(Action.LED, parts[1], parts[2]);
+        if (parts.length == 3 && parts[0].equals("gpio") &&
+                (parts[2].equals("0") || parts[2].equals("1")))
+            return new Action(Action.GPIO, parts[1], parts[2]);
+        throw new IllegalArgumentException("bad action " + spec);
+    }
+
+    public boolean hasRules(int sensor) {
+        return ruleStart[sensor + 1] > ruleStart[sensor];
+    }
+
+    // Checks a new reading of a sensor against its rules; called on every read
+    public void evaluate(int sensor, int value) {
+        int end = ruleStart[sensor + 1];
+        for (int r = ruleStart[sensor]; r < end; r++) {
+            if (!raised[r]) {
+                if (above[r] ? value > raiseAt[r] : value < raiseAt[r])
+                    transition(r, value, true);
+            } else if (above[r] ? value <= clearAt[r] : value >= clearAt[r]) {
+                transition(r, value, false);
+            }
+        }
+        evaluations += end - ruleStart[sensor];
+    }
+
+    // Clears every raised rule, e.g. before the rules are replaced
+    public void reset() {
+        for (int r = 0; r < raised.length; r++)
+            if (raised[r])
+                transition(r, 0, false);
+    }
+
+    private void transition(int r, int value, boolean raise) {
+        raised[r] = raise;
+        if (raise)
+            raiseCount++;
+        Log.w(TAG, (raise ? "Raised: " : "Cleared: ") + descriptions[r] + " at " + value);
+        for (Action action : actions[r]) {
+            try {
+                run(action, r, value, raise);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Alarm action failed: " + descriptions[r], e);
+            }
+        }
+    }
+
+    private void run(Action action, int r, int value, boolean raise) {
+        switch (action.type) {
+            case Action.NOTIFY:
+                notifier.onAlarm(r, descriptions[r], value, raise);
+                break;
+            case Action.LED:
+                // Goes through the catalog, so the LED's row shows the trigger too
+                LedTriggerCatalog.Entry entry = LedTriggerCatalog.get().entry(action.device);
+                if (raise)
+                    action.restore = entry.triggers[entry.getSelected()];
+                String trigger = raise ? action.value : action.restore;
+                int position = Arrays.asList(entry.triggers).indexOf(trigger);
+                if (trigger == null || position < 0)
+                    throw new IllegalArgumentException("no trigger " + trigger);
+                Hal.get().setLedTrigger(action.device, trigger);
+                LedTriggerCatalog.get().select(action.device, position);
+                break;
+            case Action.GPIO:
+                int level = action.value.equals("1") ? 1 : 0;
+                Hal.get().setGpioValue(action.device, raise ? level : 1 - level);
+                break;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.println(prefix + "Alarms: " + ruleStart[ruleStart.length - 1] + " rules, "
+                + evaluations + " checks, " + raiseCount + " raised");
+        for (int r = 0; r < ruleStart[ruleStart.length - 1]; r++)
+            pw.println(prefix + "  " + descriptions[r] + (raised[r] ? " RAISED" : ""));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pause flags for each group type, one bit per Device.GROUP_*.
+ *
+ * Written from the UI thread when groups collapse or expand and read by the
+ * pollers without locking. Pollers that park while their category is paused
+ * register a Listener so a resume wakes them straight away; caches register to
+ * release resources held for a category that is no longer shown.
+ */
+public class CategoryState {
+    public interface Listener {
+        // Both are called on the thread that changed the category's state
+        void onCategoryPaused(int groupType);
+        void onCategoryResumed(int groupType);
+    }
+
+    private final AtomicInteger pausedMask = new AtomicInteger();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isPaused(int groupType) {
+        return (pausedMask.get() & (1 << groupType)) != 0;
+    }
+
+    public void setPaused(int groupType, boolean paused) {
+        if (groupType < 0)
+            return;
+
+        int bit = 1 << groupType;
+        int old, updated;
+        do {
+            old = pausedMask.get();
+            updated = paused ? old | bit : old & ~bit;
+        } while (!pausedMask.compareAndSet(old, updated));
+
+        // Only notify on an actual transition
+        if (old == updated)
+            return;
+        for (Listener listener : listeners) {
+            if (paused)
+                listener.onCategoryPaused(groupType);
+            else
+                listener.onCategoryResumed(groupType);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+/**
+ * Throughput client for the CommandServer, run on the board from a shell:
+ *
+ *   CLASSPATH=/system/app/GateworksDemo.apk app_process /system/bin \
+ *       com.gateworks.gateworksdemo.CommandBench [-n <count>] [-d <depth>] [<command>...]
+ *
+ * The given commands (default: ping) are sent round robin, count of them in
+ * total, with up to depth commands written before the replies are read back.
+ * A depth of 1 is a plain request/response script; larger depths show what
+ * pipelining gains, since the server runs each burst as one batch. Depths
+ * from 1 doubling up to the given one are measured in turn and
+ * reported as commands per second, mean round trip per burst and the number
+ * of "err" replies.
+ */
+public class CommandBench {
+    private static final int DEFAULT_COUNT = 20000;
+    private static final int DEFAULT_DEPTH = CommandServer.MAX_BATCH;
+
+    public static void main(String[] args) throws IOException {
+        int count = DEFAULT_COUNT;
+        int maxDepth = DEFAULT_DEPTH;
+        int first = 0;
+        try {
+            for (; first < args.length && args[first].startsWith("-"); first += 2) {
+                if (args[first].equals("-n"))
+                    count = Integer.parseInt(args[first + 1]);
+                else if (args[first].equals("-d"))
+                    maxDepth = Integer.parseInt(args[first + 1]);
+                else
+                    throw new IllegalArgumentException(args[first]);
+            }
+            if (count < 1 || maxDepth < 1)
+                throw new IllegalArgumentException();
+        } catch (RuntimeException e) {
+            System.err.println("usage: CommandBench [-n <count>] [-d <depth>] [<command>...]");
+            System.exit(1);
+        }
+        String[] commands = first < args.length ?
+                Arrays.copyOfRange(args, first, args.length) : new String[] {"ping"};
+
+        LocalSocket socket = new LocalSocket();
+        socket.connect(new LocalSocketAddress(CommandServer.SOCKET_NAME));
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            for (int depth = 1; ; depth = Math.min(depth * 2, maxDepth)) {
+                run(out, in, commands, count, depth);
+                if (depth == maxDepth)
+                    break;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void run(Writer out, BufferedReader in, String[] commands, int count, int depth)
+            throws IOException {
+        int errors = 0;
+        int bursts = 0;
+        int next = 0;
+        long start = System.nanoTime();
+        for (int sent = 0; sent < count; bursts++) {
+            int burst = Math.min(depth, count - sent);
+            for (int i = 0; i < burst; i++) {
+                out.write(commands[next]);
+                out.write('\n');
+                next = (next + 1) % commands.length;
+            }
+            out.flush();
+            for (int i = 0; i < burst; i++) {
+                String reply = in.readLine();
+                if (reply == null)
+                    throw new IOException("Server closed the connection");
+                if (reply.startsWith("err"))
+                    errors++;
+            }
+            sent += burst;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("depth %4d: %8.0f commands/s, %8.1f us per burst, %d errors%n",
+                depth, count * 1e9 / elapsed, elapsed / 1000.0 / bursts, errors);
+    }
+}
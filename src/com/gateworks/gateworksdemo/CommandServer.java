@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Local socket endpoint that lets scripts drive the hardware without the UI.
+ *
+ * Clients connect to the abstract unix socket SOCKET_NAME and send one
+ * command per line; every command is answered with one line, in order:
+ * "ok", "ok <value>" or "err <reason>". Commands name devices the way the
+ * list shows them, and without a value they read the current state:
+ *
+ *   led <name> [0|1]        trigger <name> [<trigger>]
+ *   gpio <name> [0|1]       dir <name> [in|out]
+ *   pwm <name> [0|1]        period <name> [<ns>]
+ *   duty <name> [<ns>]      hwmon <name>
+ *   ping
+ *
+ * Lines that arrive together, e.g. from a script that writes a whole sequence
+ * before reading the replies, are run back to back as one batch on a single
+ * hardware worker and answered with one flush, so a pipelining client is not
+ * held up by a round trip per command.
+ *
+ * Writes go through the same Hal backend and LED trigger catalog as the UI,
+ * and listeners hear about every device a batch wrote, so an open list can
+ * rebind those rows. Only root, the shell and the app itself may connect.
+ */
+public class CommandServer implements Runnable {
+    private static final String TAG = "CommandServer";
+
+    static final String SOCKET_NAME = "gateworksdemo";
+    static final int MAX_BATCH = 256; // commands
+    private static final int SHELL_UID = 2000;
+
+    public interface Listener {
+        // Called on the hardware worker after every batch that wrote something
+        void onDevicesWritten(Device[] devices);
+    }
+
+    private static final Runnable STOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private static CommandServer instance;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private volatile DeviceTable devices;
+    private volatile boolean stopped;
+    private LocalServerSocket server;
+    private LinkedBlockingQueue<Runnable> batches;
+    private Thread acceptor;
+
+    // Worker counters
+    private volatile long commandCount;
+    private volatile long batchCount;
+
+    public static synchronized CommandServer get() {
+        if (instance == null)
+            instance = new CommandServer();
+        return instance;
+    }
+
+    // Opens the socket; devices are the ones commands may name
+    public synchronized void start(DeviceTable devices) {
+        this.devices = devices;
+        if (acceptor != null)
+            return;
+        try {
+            server = new LocalServerSocket(SOCKET_NAME);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot listen on " + SOCKET_NAME, e);
+            return;
+        }
+        stopped = false;
+        final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+        batches = queue;
+        new Thread(new Runnable() {
+            public void run() {
+                work(queue);
+            }
+        }, TAG + " worker").start();
+        acceptor = new Thread(this, TAG);
+        acceptor.start();
+    }
+
+    // Closes the socket; batches already queued still run
+    public synchronized void stop() {
+        if (acceptor == null)
+            return;
+        stopped = true;
+        batches.add(STOP);
+        // accept() does not return when its socket is closed, so connect once to wake it
+        LocalSocket wakeup = new LocalSocket();
+        try {
+            wakeup.connect(new LocalSocketAddress(SOCKET_NAME));
+        } catch (IOException e) {
+            // The acceptor is gone already
+        }
+        closeQuietly(wakeup);
+        try {
+            server.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        acceptor = null;
+    }
+
+    // Called when devices come or go
+    public void setDevices(DeviceTable devices) {
+        this.devices = devices;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void run() {
+        while (!stopped) {
+            LocalSocket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (!stopped)
+                    Log.e(TAG, "accept failed", e);
+                break;
+            }
+            if (stopped || !isAllowed(socket)) {
+                closeQuietly(socket);
+                continue;
+            }
+            new Thread(new Connection(socket, batches), TAG + " client").start();
+        }
+    }
+
+    private static boolean isAllowed(LocalSocket socket) {
+        try {
+            int uid = socket.getPeerCredentials().getUid();
+            if (uid == 0 || uid == SHELL_UID || uid == Process.myUid())
+                return true;
+            Log.w(TAG, "Refused connection from uid " + uid);
+        } catch (IOException e) {
+            Log.w(TAG, "No peer credentials", e);
+        }
+        return false;
+    }
+
+    private static void closeQuietly(LocalSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    // Reads a client's lines and queues them in batches of whatever has arrived
+    private class Connection implements Runnable {
+        private final LocalSocket socket;
+        private final LinkedBlockingQueue<Runnable> queue;
+
+        Connection(LocalSocket socket, LinkedBlockingQueue<Runnable> queue) {
+            this.socket = socket;
+            this.queue = queue;
+        }
+
+        public void run() {
+            String[] batch = new String[MAX_BATCH];
+            try {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                final Writer out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream()));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int n = 0;
+                    batch[n++] = line;
+                    while (n < MAX_BATCH && in.ready() && (line = in.readLine()) != null)
+                        batch[n++] = line;
+                    final String[] commands = Arrays.copyOf(batch, n);
+                    queue.add(new Runnable() {
+                        public void run() {
+                            runBatch(commands, out);
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Client gone", e);
+            }
+
+            // Closed behind the client's last batch, so its replies still go out
+            queue.add(new Runnable() {
+                public void run() {
+                    closeQuietly(socket);
+                }
+            });
+        }
+    }
+
+    private void work(LinkedBlockingQueue<Runnable> queue) {
+        while (true) {
+            Runnable batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (batch == STOP)
+                break;
+
+            try {
+                batch.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Command batch failed", e);
+            }
+        }
+    }
+
+    // Runs on the worker; replies are flushed once for the whole batch
+    private void runBatch(String[] commands, Writer out) {
+        long start = System.nanoTime();
+        ArrayList<Device> written = new ArrayList<Device>();
+        try {
+            for (String command : commands) {
+                out.write(execute(command, written));
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            Log.d(TAG, "Client gone before its replies", e);
+        }
+        LatencyStats.recordNanos(LatencyStats.OP_COMMAND_BATCH, System.nanoTime() - start);
+        commandCount += commands.length;
+        batchCount++;
+
+        if (written.isEmpty())
+            return;
+        Device[] changed = written.toArray(new Device[written.size()]);
+        for (Listener listener : listeners)
+            listener.onDevicesWritten(changed);
+    }
+
+    private static Device.Kind kindOf(String verb) {
+        if (verb.equals("led") || verb.equals("trigger"))
+            return Device.Kind.LED;
+        else if (verb.equals("gpio") || verb.equals("dir"))
+            return Device.Kind.GPIO;
+        else if (verb.equals("hwmon"))
+            return Device.Kind.HWMON;
+        else if (verb.equals("pwm") || verb.equals("period") || verb.equals("duty"))
+            return Device.Kind.PWM;
+        else
+            return null;
+    }
+
+    // Runs one command and returns its reply; devices it wrote are added to written
+    private String execute(String command, ArrayList<Device> written) {
+        String[] args = command.trim().split(" ");
+        String verb = args[0];
+        if (verb.equals("ping"))
+            return "ok";
+
+        Device.Kind kind = kindOf(verb);
+        if (kind == null)
+            return "err unknown command " + verb;
+        if (args.length < 2 || args.length > 3)
+            return "err usage: " + verb + " <name> [<value>]";
+        Device device = devices.find(kind, args[1]);
+        if (device == null)
+            return "err no " + kind.header + " " + args[1];
+        String name = device.name;
+        String value = args.length > 2 ? args[2] : null;
+        Hardware hw = Hal.get();
+
+        try {
+            if (verb.equals("led")) {
+                if (value == null)
+                    return hw.getLedValue(name) ? "ok 1" : "ok 0";
+                boolean on = parseBit(value) == 1;
+                hw.setLedValue(name, on);
+                // The driver drops the trigger of a LED that is turned off, as in the UI
+                if (!on)
+                    LedTriggerCatalog.get().select(name, 0);
+            } else if (verb.equals("trigger")) {
+                LedTriggerCatalog.Entry entry = LedTriggerCatalog.get().entry(name);
+                if (entry.triggers.length == 0)
+                    return "err " + name + " has no triggers";
+                if (value == null)
+                    return "ok " + entry.triggers[entry.getSelected()];
+                int position = Arrays.asList(entry.triggers).indexOf(value);
+                if (position < 0)
+                    return "err no trigger " + value;
+                hw.setLedTrigger(name, value);
+                LedTriggerCatalog.get().select(name, position);
+            } else if (verb.equals("gpio")) {
+                if (value == null)
+                    return "ok " + hw.getGpioValue(name);
+                hw.setGpioValue(name, parseBit(value));
+            } else if (verb.equals("dir")) {
+                if (value == null)
+                    return hw.isGpioInput(name) ? "ok in" : "ok out";
+                if (!device.hasCapability(Device.CAP_DIRECTION))
+                    return "err " + name + " is output only";
+                if (!value.equals("in") && !value.equals("out"))
+                    return "err bad direction " + value;
+                hw.setGpioInput(name, value.equals("in"));
+            } else if (verb.equals("hwmon")) {
+                if (value != null)
+                    return "err " + name + " is read only";
+                return "ok " + hw.getHwmonValue(name);
+            } else if (verb.equals("pwm")) {
+                if (value == null)
+                    return hw.getPwmEnabled(name) ? "ok 1" : "ok 0";
+                hw.setPwmEnabled(name, parseBit(value) == 1);
+            } else if (verb.equals("period")) {
+                if (value == null)
+                    return "ok " + hw.getPwmPeriod(name);
+                hw.setPwmPeriod(name, parseNanos(value));
+            } else {
+                if (value == null)
+                    return "ok " + hw.getPwmDutyCycle(name);
+                hw.setPwmDutyCycle(name, parseNanos(value));
+            }
+        } catch (NumberFormatException e) {
+            return "err bad value " + value;
+        } catch (RuntimeException e) {
+            // A failing backend call must not take the rest of the batch down with it
+            Log.w(TAG, "Command failed: " + command, e);
+            String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return "err " + reason.replace('\n', ' ');
+        }
+        written.add(device);
+        return "ok";
+    }
+
+    private static int parseBit(String value) {
+        int bit = Integer.parseInt(value);
+        if (bit != 0 && bit != 1)
+            throw new NumberFormatException(value);
+        return bit;
+    }
+
+    private static int parseNanos(String value) {
+        int ns = Integer.parseInt(value);
+        if (ns < 0)
+            throw new NumberFormatException(value);
+        return ns;
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.println(prefix + "Commands: " + commandCount + " in " + batchCount + " batches"
+                + (acceptor != null ? "" : " (socket closed)"));
+    }
+}
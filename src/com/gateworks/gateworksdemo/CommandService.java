@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+
+/**
+ * Keeps the CommandServer socket open with or without the activity.
+ *
+ * The socket is only opened when the persist.gw.cmd property is 1. A test rig
+ * can start it without the UI:
+ *
+ *   setprop persist.gw.cmd 1
+ *   am startservice -n com.gateworks.gateworksdemo/.CommandService
+ *
+ * Devices that come or go are only picked up while the activity runs.
+ */
+public class CommandService extends Service {
+    static final String ENABLE_PROPERTY = "persist.gw.cmd";
+
+    static boolean isEnabled() {
+        return PropertyIndex.get().getValue(ENABLE_PROPERTY, "0").equals("1");
+    }
+
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (!isEnabled()) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        CommandServer.get().start(DeviceTable.scan(Hal.get().listDevices(false)));
+        return START_STICKY;
+    }
+
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    public void onDestroy() {
+        CommandServer.get().stop();
+        super.onDestroy();
+    }
+}
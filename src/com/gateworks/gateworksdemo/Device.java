@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * One device of the board, as listed by the Hal backend.
+ *
+ * Descriptors are built once per device list by DeviceTable.scan() and never
+ * change afterwards, so the adapter, the pollers and the sampling service can
+ * share them between threads. Everything a row or a poller needs to know about
+ * a device is resolved here up front, instead of being cut out of the raw
+ * getprop line on every use.
+ */
+public final class Device {
+    // Group types, one per Kind; the list shows its groups in this order and
+    // CategoryState keeps one pause flag for each
+    public static final int GROUP_LED = 0;
+    public static final int GROUP_GPIO = 1;
+    public static final int GROUP_HWMON = 2;
+    public static final int GROUP_PWM = 3;
+
+    public enum Kind {
+        LED("LED", "led.", GROUP_LED),
+        GPIO("GPIO", "gpio.", GROUP_GPIO),
+        HWMON("HWMON", "hwmon.", GROUP_HWMON),
+        PWM("PWM", "pwm.", GROUP_PWM);
+
+        public final String header; // group header shown in the list
+        final String category; // PropertyIndex category the devices are listed under
+        public final int groupType;
+
+        Kind(String header, String category, int groupType) {
+            this.header = header;
+            this.category = category;
+            this.groupType = groupType;
+        }
+    }
+
+    // Device properties live under hw.; other keys sharing a category name, like
+    // persist.gw.poll.hwmon.temp, are settings rather than devices
+    static final String KEY_PREFIX = "[hw.";
+
+    // Capabilities
+    public static final int CAP_READ = 1; // has a value that can be read
+    public static final int CAP_WRITE = 2; // value can be set
+    public static final int CAP_DIRECTION = 4; // gpio can be switched between in and out
+    public static final int CAP_TRIGGER = 8; // led can be driven by a kernel trigger
+
+    public final Kind kind;
+    public final String name; // e.g. "dio0" for "[hw.gpio.dio0]: [240]"
+    public final String value; // raw property value, e.g. "240"
+    public final String path; // attribute the reading comes from, or null to go through the Hal
+    public final int caps;
+
+    Device(Kind kind, String name, String value) {
+        this.kind = kind;
+        this.name = name;
+        this.value = value;
+
+        switch (kind) {
+            case LED:
+                path = null;
+                caps = CAP_READ | CAP_WRITE | CAP_TRIGGER;
+                break;
+            case GPIO:
+                // Only the backend knows where, or whether, its gpios live in sysfs
+                String dir = Hal.get().getGpioDir(name);
+                path = dir == null ? null : dir + "/value";
+                // The canbus standby line is output only
+                caps = CAP_READ | CAP_WRITE | (name.contains("can_stby") ? 0 : CAP_DIRECTION);
+                break;
+            case HWMON:
+                path = SysfsPaths.hwmonInput(value);
+                caps = CAP_READ;
+                break;
+            default:
+                path = null;
+                caps = CAP_READ | CAP_WRITE;
+                break;
+        }
+    }
+
+    // Cuts name and value out of a "[hw.gpio.dio0]: [240]" line in one pass over
+    // its characters; returns null for malformed lines and keys outside hw.<kind>.
+    static Device scan(Kind kind, String line) {
+        int nameStart = KEY_PREFIX.length() + kind.category.length();
+        if (!line.startsWith(KEY_PREFIX) || !line.startsWith(kind.category, KEY_PREFIX.length()))
+            return null;
+
+        int lastDot = -1;
+        int keyEnd = -1;
+        int valueStart = -1;
+        int valueEnd = -1;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '.' && keyEnd < 0) {
+                lastDot = i;
+            } else if (c == ']') {
+                if (keyEnd < 0)
+                    keyEnd = i;
+                valueEnd = i;
+            } else if (c == '[') {
+                valueStart = i + 1;
+            }
+        }
+        if (keyEnd < 0 || lastDot != nameStart - 1 || valueStart <= keyEnd)
+            return null;
+
+        // Multi-line values have no closing bracket on their first line
+        String value = valueEnd < valueStart ? line.substring(valueStart) :
+                line.substring(valueStart, valueEnd);
+        return new Device(kind, line.substring(lastDot + 1, keyEnd), value);
+    }
+
+    public boolean hasCapability(int cap) {
+        return (caps & cap) != 0;
+    }
+
+    // Devices are the same if they were listed the same; the rest derives from that
+    public boolean equals(Object o) {
+        if (!(o instanceof Device))
+            return false;
+        Device other = (Device) o;
+        return kind == other.kind && name.equals(other.name) && value.equals(other.value);
+    }
+
+    public int hashCode() {
+        return (kind.ordinal() * 31 + name.hashCode()) * 31 + value.hashCode();
+    }
+
+    public String toString() {
+        return kind.header + " " + name;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The device list split into one Device[] per group, indexed by group position.
+ *
+ * Only kinds with at least one device get a group, in Device.Kind order, which
+ * is the order the groups are shown in. A table is immutable; a new device list
+ * means a new table.
+ */
+public class DeviceTable {
+    private static final Device[] NONE = new Device[0];
+
+    private final Device[][] byKind = new Device[Device.Kind.values().length][];
+    private final Device.Kind[] kinds; // kind of each group position
+    private final Device[][] groups;
+
+    private DeviceTable(Device[][] byKind) {
+        int count = 0;
+        for (int k = 0; k < byKind.length; k++) {
+            this.byKind[k] = byKind[k];
+            if (byKind[k].length > 0)
+                count++;
+        }
+
+        kinds = new Device.Kind[count];
+        groups = new Device[count][];
+        int g = 0;
+        for (Device.Kind kind : Device.Kind.values()) {
+            if (byKind[kind.ordinal()].length == 0)
+                continue;
+            kinds[g] = kind;
+            groups[g++] = byKind[kind.ordinal()];
+        }
+    }
+
+    // Builds descriptors for every device of a backend's device list
+    public static DeviceTable scan(PropertyIndex devices) {
+        Device[][] byKind = new Device[Device.Kind.values().length][];
+        for (Device.Kind kind : Device.Kind.values()) {
+            List<String> lines = devices.getCategory(kind.category);
+            ArrayList<Device> parsed = new ArrayList<Device>(lines.size());
+            for (String line : lines) {
+                Device device = Device.scan(kind, line);
+                if (device != null)
+                    parsed.add(device);
+            }
+            byKind[kind.ordinal()] = parsed.isEmpty() ? NONE : parsed.toArray(NONE);
+        }
+        return new DeviceTable(byKind);
+    }
+
+    public int getGroupCount() {
+        return groups.length;
+    }
+
+    public Device.Kind getKind(int groupPosition) {
+        return kinds[groupPosition];
+    }
+
+    // The returned array is shared; callers must not modify it
+    public Device[] getGroup(int groupPosition) {
+        return groups[groupPosition];
+    }
+
+    // All devices of a kind, empty if there are none
+    public Device[] get(Device.Kind kind) {
+        return byKind[kind.ordinal()];
+    }
+
+    // Looks a device up by the name the list shows for it; null if there is none
+    public Device find(Device.Kind kind, String name) {
+        for (Device device : byKind[kind.ordinal()])
+            if (device.name.equals(name))
+                return device;
+        return null;
+    }
+
+    // Group position of a kind, or -1 if it has no devices
+    public int indexOf(Device.Kind kind) {
+        for (int g = 0; g < kinds.length; g++)
+            if (kinds[g] == kind)
+                return g;
+        return -1;
+    }
+
+    public boolean sameDevices(DeviceTable other, Device.Kind kind) {
+        return Arrays.equals(get(kind), other.get(kind));
+    }
+
+    public boolean sameDevices(DeviceTable other) {
+        for (Device.Kind kind : Device.Kind.values())
+            if (!sameDevices(other, kind))
+                return false;
+        return true;
+    }
+}
@@ -18,21 +18,17 @@ package com.gateworks.gateworksdemo;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 import android.app.Activity;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.BaseExpandableListAdapter;
@@ -46,42 +42,62 @@ import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.gateworks.gateworksutil.*;
 
-public class ExpandableListAdapter extends BaseExpandableListAdapter {
+public class ExpandableListAdapter extends BaseExpandableListAdapter
+        implements AbsListView.RecyclerListener, AbsListView.OnScrollListener {
+    private static final String TAG = "ExpandableListAdapter";
+
     // 4 Group types
-    private static final int GROUP_LED = 0;
-    private static final int GROUP_GPIO = 1;
-    private static final int GROUP_HWMON = 2;
-    private static final int GROUP_PWM = 3;
+    private static final int GROUP_LED = Device.GROUP_LED;
+    private static final int GROUP_GPIO = Device.GROUP_GPIO;
+    private static final int GROUP_HWMON = Device.GROUP_HWMON;
+    private static final int GROUP_PWM = Device.GROUP_PWM;
 
     private Activity _context;
-    private List<String> _listDataHeader; // List of group types
-    private HashMap<String, List<String>> _listDataChild; // Map of all children for each group
+    private DeviceTable _devices; // Descriptors of all children, per group
 
     public ArrayList<ArrayList<ViewHolder>> holders = new ArrayList<ArrayList<ViewHolder>>(); // List of all viewholders
 
-    public ExpandableListAdapter(final Activity context, List<String> listDataHeader,
-                                 HashMap<String, List<String>> listChildData) {
+    // Rows re-rendered by poller updates, in total and during the last applied tick.
+    // An idle board should leave the per tick count at zero.
+    private int redrawCount;
+    private int tickRedrawCount;
+
+    private int inflateCount;
+    private int rebindCount;
+
+    // Listener callbacks that would have written the state the hardware already has,
+    // e.g. echoes of bind time setChecked() or the spinner's deferred onItemSelected()
+    private int avoidedWrites;
+
+    private ThumbRenderer thumbRenderer; // Labelled PWM thumbs shared by all rows
+
+    // One spinner adapter per distinct trigger set, keyed by the catalog's shared array
+    private final HashMap<String[], ArrayAdapter<String>> triggerAdapters =
+            new HashMap<String[], ArrayAdapter<String>>();
+
+    // Visibility changes are held back during a scroll and published once it settles,
+    // so rows flashing past during a fling do not trigger reads
+    private int scrollState = SCROLL_STATE_IDLE;
+
+    public ExpandableListAdapter(final Activity context, DeviceTable devices) {
         this._context = context;
-        this._listDataHeader = listDataHeader;
-        this._listDataChild = listChildData;
+        this._devices = devices;
 
         ArrayList<ViewHolder> tmp;
-        for (String type: _listDataHeader) {
+        for (int g = 0; g < _devices.getGroupCount(); g++) {
             tmp = new ArrayList<ViewHolder>();
 
             // Create a viewholder for each list child
-            for (String propText :_listDataChild.get(type))
-                tmp.add(new ViewHolder(propText));
+            for (Device device : _devices.getGroup(g))
+                tmp.add(new ViewHolder(device));
 
             holders.add(tmp);
         }
     }
 
     public Object getChild(int groupPosition, int childPosititon) {
-        return this._listDataChild.get(this._listDataHeader.get(groupPosition))
-                .get(childPosititon);
+        return _devices.getGroup(groupPosition)[childPosititon];
     }
 
     public long getChildId(int groupPosition, int childPosition) {
@@ -90,51 +106,58 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
 
     public View getChildView(int groupPosition, final int childPosition,
                              boolean isLastChild, View convertView, ViewGroup parent) {
-        LayoutInflater inflater = _context.getLayoutInflater();
+        long t = LatencyStats.start();
         ViewHolder holder;
 
         holder = holders.get(groupPosition).get(childPosition);
         holder.groupPosition = groupPosition;
         holder.childPosition = childPosition;
 
+        // Only inflate when the list has no recycled row of this type to hand back
+        if (convertView == null) {
+            convertView = inflateChild(getChildType(groupPosition, childPosition), parent);
+            inflateCount++;
+        } else {
+            rebindCount++;
+        }
+
+        // Move the row's widgets over from whichever holder it showed last
+        ViewHolder previous = (ViewHolder) convertView.getTag();
+        if (previous != holder) {
+            if (previous != null)
+                setAttached(previous, false);
+            if (holder.view != null) {
+                holder.tagWidgets(null);
+                holder.view.setTag(null);
+            }
+            holder.clearViews();
+            if (previous != null)
+                holder.takeViews(previous);
+            else
+                holder.findViews(convertView);
+            convertView.setTag(holder);
+        }
+        setAttached(holder, true);
+
+        // A freshly bound view has none of the holder's state rendered yet
+        holder.rendered = false;
+
+        // Listeners ignore widgets without a holder, so binding does not echo back to sysfs
+        holder.tagWidgets(null);
         try {
-            // Assign applicable viewholder fields depending on type of child
+            // Bind applicable viewholder fields depending on type of child
             switch (getGroupType(groupPosition)) {
                 case GROUP_LED:
-                    convertView = inflater.inflate(R.layout.list_led, null);
-                    holder.view = convertView;
-                    holder.name = (TextView) convertView.findViewById(R.id.lblListName);
-                    holder.toggle = (Switch) convertView.findViewById(R.id.lblListSwitch);
-                    holder.spinner = (Spinner) convertView.findViewById(R.id.lblListSpinner);
                     updateLED(holder);
-                    addLEDListeners(holder);
                     break;
                 case GROUP_GPIO:
-                    convertView = inflater.inflate(R.layout.list_gpio, null);
-                    holder.view = convertView;
-                    holder.name = (TextView) convertView.findViewById(R.id.lblListName);
-                    holder.toggle = (Switch) convertView.findViewById(R.id.lblListSwitch);
-                    holder.monitor = (TextView) convertView.findViewById(R.id.lblListMonitor);
-                    holder.group = (RadioGroup) convertView.findViewById(R.id.lblListRadioGroup);
                     updateGPIO(holder);
-                    addGPIOListeners(holder);
                     break;
                 case GROUP_HWMON:
-                    convertView = inflater.inflate(R.layout.list_hwmon, null);
-                    holder.view = convertView;
-                    holder.name = (TextView) convertView.findViewById(R.id.lblListName);
-                    holder.monitor = (TextView) convertView.findViewById(R.id.lblListMonitor);
                     updateHWMON(holder);
                     break;
                 case GROUP_PWM:
-                    convertView = inflater.inflate(R.layout.list_pwm, null);
-                    holder.view = convertView;
-                    holder.name = (TextView) convertView.findViewById(R.id.lblListName);
-                    holder.checkBox = (CheckBox) convertView.findViewById(R.id.lblCheckBox);
-                    holder.editText = (EditText) convertView.findViewById(R.id.lblEditText);
-                    holder.slider = (SeekBar) convertView.findViewById(R.id.lblListSlider);
                     updatePWM(holder);
-                    addPWMListeners(holder);
                     break;
                 default:
                     //undefined child view type
@@ -143,26 +166,183 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        convertView.setTag(holder);
+        holder.tagWidgets(holder);
+
         //Setting the name of the item is the same for all child types
-        holder.name.setText(holder.nameVal);
+        holder.name.setText(holder.device.name);
+        LatencyStats.record(LatencyStats.OP_BIND_CHILD, t);
         return convertView;
     }
 
+    public DeviceTable getDevices() {
+        return _devices;
+    }
+
+    // Switches to a new device list. Devices that stay keep their holders, with
+    // their state and rows, and groups whose devices did not change keep their
+    // holder list as is.
+    void setDevices(DeviceTable devices) {
+        ArrayList<ArrayList<ViewHolder>> updated = new ArrayList<ArrayList<ViewHolder>>();
+        for (int g = 0; g < devices.getGroupCount(); g++) {
+            Device.Kind kind = devices.getKind(g);
+            int old = _devices.indexOf(kind);
+            if (old >= 0 && _devices.sameDevices(devices, kind)) {
+                // Move the whole list over, leaving nothing behind to release
+                updated.add(holders.set(old, new ArrayList<ViewHolder>()));
+                continue;
+            }
+
+            ArrayList<ViewHolder> previous = old < 0 ? new ArrayList<ViewHolder>() :
+                    holders.get(old);
+            ArrayList<ViewHolder> group = new ArrayList<ViewHolder>();
+            for (Device device : devices.getGroup(g)) {
+                ViewHolder holder = null;
+                for (int i = 0; i < previous.size() && holder == null; i++)
+                    if (previous.get(i).device.equals(device))
+                        holder = previous.remove(i);
+                group.add(holder != null ? holder : new ViewHolder(device));
+            }
+            updated.add(group);
+        }
+
+        // Whatever was not taken over belongs to a device that is gone
+        for (ArrayList<ViewHolder> group : holders)
+            for (ViewHolder holder : group)
+                release(holder);
+
+        holders = updated;
+        _devices = devices;
+        renumber();
+        notifyDataSetChanged();
+    }
+
+    // Brings every holder's positions up to date after the lists changed
+    private void renumber() {
+        for (int g = 0; g < holders.size(); g++) {
+            ArrayList<ViewHolder> group = holders.get(g);
+            for (int c = 0; c < group.size(); c++) {
+                group.get(c).groupPosition = g;
+                group.get(c).childPosition = c;
+            }
+        }
+    }
+
+    // A removed device's holder lets go of its row, so nothing updates it any more
+    private void release(ViewHolder holder) {
+        if (holder.view != null) {
+            holder.tagWidgets(null);
+            holder.view.setTag(null);
+        }
+        holder.clearViews();
+        holder.attached = false;
+    }
+
+    // A row that left the screen, through scrolling or a collapsed group, goes to the
+    // scrap heap; its holder no longer has anything showing
+    public void onMovedToScrapHeap(View view) {
+        Object tag = view.getTag();
+        if (tag instanceof ViewHolder)
+            setAttached((ViewHolder) tag, false);
+    }
+
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        this.scrollState = scrollState;
+        if (scrollState != SCROLL_STATE_IDLE)
+            return;
+        for (ArrayList<ViewHolder> group : holders)
+            for (ViewHolder holder : group)
+                publishVisibility(holder);
+    }
+
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                         int totalItemCount) {
+    }
+
+    private void setAttached(ViewHolder holder, boolean attached) {
+        holder.attached = attached;
+        if (scrollState == SCROLL_STATE_IDLE)
+            publishVisibility(holder);
+    }
+
+    // Tells the activity when a child's row came into or went out of view
+    private void publishVisibility(ViewHolder holder) {
+        if (holder.published == holder.attached)
+            return;
+        holder.published = holder.attached;
+        if (_context instanceof MainActivity)
+            ((MainActivity) _context).onChildVisibilityChanged(
+                    getGroupType(holder.groupPosition), holder.childPosition, holder.attached);
+    }
+
+    // Inflates a child row and installs the shared listeners for its type
+    private View inflateChild(int childType, ViewGroup parent) {
+        LayoutInflater inflater = _context.getLayoutInflater();
+        View row;
+
+        switch (childType) {
+            case GROUP_LED:
+                row = inflater.inflate(R.layout.list_led, parent, false);
+                ((Spinner) row.findViewById(R.id.lblListSpinner))
+                        .setOnItemSelectedListener(ledTriggerListener);
+                ((Switch) row.findViewById(R.id.lblListSwitch))
+                        .setOnCheckedChangeListener(ledToggleListener);
+                break;
+            case GROUP_GPIO:
+                row = inflater.inflate(R.layout.list_gpio, parent, false);
+                ((RadioGroup) row.findViewById(R.id.lblListRadioGroup))
+                        .setOnCheckedChangeListener(gpioDirectionListener);
+                ((Switch) row.findViewById(R.id.lblListSwitch))
+                        .setOnCheckedChangeListener(gpioToggleListener);
+                break;
+            case GROUP_HWMON:
+                row = inflater.inflate(R.layout.list_hwmon, parent, false);
+                break;
+            case GROUP_PWM:
+                row = inflater.inflate(R.layout.list_pwm, parent, false);
+                ((CheckBox) row.findViewById(R.id.lblCheckBox))
+                        .setOnCheckedChangeListener(pwmEnableListener);
+                ((EditText) row.findViewById(R.id.lblEditText))
+                        .setOnEditorActionListener(pwmPeriodListener);
+                SeekBar slider = (SeekBar) row.findViewById(R.id.lblListSlider);
+                slider.setOnSeekBarChangeListener(pwmSliderListener);
+
+                // All rows share one renderer, built from the theme's clean thumb
+                if (thumbRenderer == null)
+                    thumbRenderer = new ThumbRenderer(
+                            slider.getThumb().getConstantState().newDrawable());
+                slider.setThumb(thumbRenderer.newThumb());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown child type " + childType);
+        }
+        return row;
+    }
+
+    // Child rows inflated from scratch vs. recycled rows rebound to another child
+    public int getInflateCount() {
+        return inflateCount;
+    }
+
+    public int getRebindCount() {
+        return rebindCount;
+    }
+
     public int getChildrenCount(int groupPosition) {
-        return this._listDataChild.get(this._listDataHeader.get(groupPosition)).size();
+        return _devices.getGroup(groupPosition).length;
     }
 
     public Object getGroup(int groupPosition) {
-        return this._listDataHeader.get(groupPosition);
+        return _devices.getKind(groupPosition).header;
     }
 
     public int getGroupCount() {
-        return this._listDataHeader.size();
+        return _devices.getGroupCount();
     }
 
+    // Ids follow the category, so expanded groups stay expanded when hotplug
+    // adds or removes a group in front of them
     public long getGroupId(int groupPosition) {
-        return groupPosition;
+        return getGroupType(groupPosition);
     }
 
     public View getGroupView(int groupPosition, boolean isExpanded,
@@ -172,8 +352,17 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
         Integer groupType = getGroupType(groupPosition);
 
         // We need to create a new "cell container" if none exists
-        if (convertView == null || convertView.getTag() != groupType) {
-            convertView = inflater.inflate(R.layout.header, null);
+        if (convertView == null || !groupType.equals(convertView.getTag())) {
+            if (groupType == GROUP_GPIO) {
+                // The gpio header carries the whole-bank actions
+                convertView = inflater.inflate(R.layout.header_gpio, parent, false);
+                convertView.findViewById(R.id.btnAllHigh).setOnClickListener(gpioBankListener);
+                convertView.findViewById(R.id.btnAllLow).setOnClickListener(gpioBankListener);
+                convertView.findViewById(R.id.btnReadAll).setOnClickListener(gpioBankListener);
+            } else {
+                convertView = inflater.inflate(R.layout.header, null);
+            }
+            convertView.setTag(groupType);
         }
 
         //Setting the name of the header group will be the same for all groups
@@ -196,76 +385,116 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
         return 4;
     }
 
+    // Rows are only recycled between children of the same group type
+    public int getChildType(int groupPosition, int childPosition) {
+        return getGroupType(groupPosition);
+    }
+
     public int getGroupTypeCount() {
         return 4;
     }
 
     public void onGroupCollapsed(int groupPosition) {
-        switch (groupPosition) {
-            case 1: MainActivity.pausedThreads.add("GPIO");
-                break;
-            case 2: MainActivity.pausedThreads.add("HWMON");
-                break;
-        }
+        // Stop polling a category while none of its children are shown
+        if (_context instanceof MainActivity)
+            ((MainActivity) _context).categoryState.setPaused(getGroupType(groupPosition), true);
     }
 
     public void onGroupExpanded(int groupPosition) {
-        switch (groupPosition) {
-            case 1: MainActivity.pausedThreads.remove("GPIO");
-                break;
-            case 2: MainActivity.pausedThreads.remove("HWMON");
-                break;
-        }
+        // Resuming wakes the category's poller immediately
+        if (_context instanceof MainActivity)
+            ((MainActivity) _context).categoryState.setPaused(getGroupType(groupPosition), false);
     }
 
     public int getGroupType(int groupPosition) {
-        switch (groupPosition) {
-            case 0:
-                return GROUP_LED;
-            case 1:
-                return GROUP_GPIO;
-            case 2:
-                return GROUP_HWMON;
-            case 3:
-                return GROUP_PWM;
-            default:
-                return -1;
-        }
+        // Empty groups are left out, so the type comes from the group's kind
+        return _devices.getKind(groupPosition).groupType;
     }
 
     public void updateLED(ViewHolder holder) {
-        //create and set adapter for spinner using trigger options
-        ArrayAdapter<String> adapter = new ArrayAdapter<String>(_context,
-                android.R.layout.simple_spinner_dropdown_item,
-                (String []) LightEmittingDiode.getAllLedTriggers(holder.nameVal).toArray());
-        holder.spinner.setAdapter(adapter);
+        long t = LatencyStats.start();
+        // Trigger options and the current trigger come from the catalog, not the LED
+        LedTriggerCatalog.Entry triggers = LedTriggerCatalog.get().entry(holder.device.name);
+        ArrayAdapter<String> adapter = triggerAdapters.get(triggers.triggers);
+        if (adapter == null) {
+            adapter = new ArrayAdapter<String>(_context,
+                    android.R.layout.simple_spinner_dropdown_item, triggers.triggers);
+            triggerAdapters.put(triggers.triggers, adapter);
+        }
+        if (holder.spinner.getAdapter() != adapter)
+            holder.spinner.setAdapter(adapter);
 
         //set default selection to the mode indicated in trigger
-        holder.spinner.setSelection(adapter.getPosition(
-                LightEmittingDiode.getLedTrigger(holder.nameVal)));
+        holder.spinner.setSelection(triggers.getSelected());
 
         // Set LED switch to on/off depending on current setting
-        holder.toggle.setChecked(LightEmittingDiode.getLedValue(holder.nameVal));
+        holder.checked = Hal.get().getLedValue(holder.device.name);
+        holder.toggle.setChecked(holder.checked);
+        LatencyStats.record(LatencyStats.OP_UPDATE_LED, t);
+    }
+
+
+    // Rebinds a LED or PWM row from the hardware after something else wrote to it.
+    // Rows that are not showing read their state again when they are bound.
+    void refresh(ViewHolder holder) {
+        if (holder.view == null)
+            return;
+        holder.tagWidgets(null);
+        if (holder.device.kind == Device.Kind.LED)
+            updateLED(holder);
+        else if (holder.device.kind == Device.Kind.PWM)
+            updatePWM(holder);
+        holder.tagWidgets(holder);
+    }
+
+    // Called by the pollers before applying a tick's updates
+    public void beginTick() {
+        tickRedrawCount = 0;
+    }
+
+    public int getRedrawCount() {
+        return redrawCount;
+    }
+
+    public int getTickRedrawCount() {
+        return tickRedrawCount;
+    }
+
+    private void countRedraw() {
+        redrawCount++;
+        tickRedrawCount++;
     }
 
+    void countAvoidedWrite() {
+        avoidedWrites++;
+    }
+
+    public int getAvoidedWriteCount() {
+        return avoidedWrites;
+    }
 
+    // Binds the last sampled gpio state; the reads happen on the sampling worker
     public void updateGPIO(ViewHolder holder) {
-        // Record current value of gpio
-        int gpioVal = GeneralPurposeIO.getGpioValue(holder.nameVal);
+        holder.radioChecked = holder.input ? R.id.rdioIn : R.id.rdioOut;
 
-        // GPIO direction needs to be read and assigned to radio group
-        holder.radioChecked = GeneralPurposeIO.getGpioDirection(holder.nameVal)
-                .toString().equals("IN") ? R.id.rdioIn : R.id.rdioOut;
+        // Skip all view work if the row already shows this state
+        if (holder.rendered && holder.renderedRadio == holder.radioChecked &&
+                holder.renderedValue == holder.value)
+            return;
+        long t = LatencyStats.start();
+
+        // GPIO direction is assigned to the radio group
         holder.group.check(holder.radioChecked);
 
-        // If the gpio being updated is the canbus (output only), set input radio child to invisible
-        if(holder.nameVal.contains("can_stby"))
-            holder.group.findViewById(R.id.rdioIn).setVisibility(View.INVISIBLE);
+        // If the gpio being updated is the canbus (output only), set input radio child to invisible.
+        // Recycled rows may come from the canbus, so the other pins reset it.
+        holder.group.findViewById(R.id.rdioIn).setVisibility(
+                holder.device.hasCapability(Device.CAP_DIRECTION) ? View.VISIBLE : View.INVISIBLE);
 
         switch (holder.radioChecked) {
             case R.id.rdioIn:
                 // Update monitor to reflect value if set as input
-                holder.monitor.setText(Integer.toString(gpioVal));
+                holder.monitor.setText(Integer.toString(holder.value));
                 holder.monitor.setVisibility(View.VISIBLE);
                 holder.toggle.setVisibility(View.GONE);
                 break;
@@ -273,7 +502,7 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
                 // Update switch attributes if set as output
                 holder.toggle.setTextOn("HIGH");
                 holder.toggle.setTextOff("LOW");
-                holder.toggle.setChecked(gpioVal == 1);
+                holder.toggle.setChecked(holder.value == 1);
                 holder.monitor.setVisibility(View.GONE);
                 holder.toggle.setVisibility(View.VISIBLE);
                 break;
@@ -283,180 +512,316 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
 
         //force redraw after changes
         holder.view.invalidate();
+
+        holder.rendered = true;
+        holder.renderedRadio = holder.radioChecked;
+        holder.renderedValue = holder.value;
+        countRedraw();
+        LatencyStats.record(LatencyStats.OP_UPDATE_GPIO, t);
     }
 
+    // Binds the last sampled hwmon reading, unless it is already on screen
     public void updateHWMON(ViewHolder holder) {
-        holder.monitor.setText(Integer.toString(HardwareMonitor.getHwmonValue(holder.nameVal)));
+        long t = LatencyStats.start();
+
+        // The trend moves on every new sample, even when the reading itself is unchanged
+        if (holder.history != null && holder.sparkline.setSamples(holder.history))
+            countRedraw();
+
+        if (holder.rendered && holder.renderedValue == holder.value)
+            return;
+
+        holder.monitor.setText(Integer.toString(holder.value));
         holder.monitor.invalidate();
+
+        holder.rendered = true;
+        holder.renderedValue = holder.value;
+        countRedraw();
+        LatencyStats.record(LatencyStats.OP_UPDATE_HWMON, t);
     }
 
     public void updatePWM(ViewHolder holder) {
-        // Update the checkbox to reflect the enabled status
-        holder.checkBox.setChecked(PulseWidthModulation.getEnabled(holder.nameVal));
+        // Cache the current PWM state on the holder, then bind it
+        long t = LatencyStats.start();
+        holder.checked = Hal.get().getPwmEnabled(holder.device.name);
+        holder.period = Hal.get().getPwmPeriod(holder.device.name);
+        holder.dutyCycle = Hal.get().getPwmDutyCycle(holder.device.name);
+        bindPWM(holder);
+        LatencyStats.record(LatencyStats.OP_UPDATE_PWM, t);
+    }
 
-        // Record current period value of PWM
-        int period = PulseWidthModulation.getPeriod(holder.nameVal);
+    // Binds the PWM state cached on the holder
+    void bindPWM(ViewHolder holder) {
+        // Update the checkbox to reflect the enabled status
+        holder.checkBox.setChecked(holder.checked);
 
         // Update edit box's text to current period of PWM (in milliseconds)
-        holder.editText.setText(Integer.toString(period / 1000));
+        holder.editText.setText(Integer.toString(holder.period / 1000));
 
         // Update the slider to show the current duty cycle to period ratio
-        holder.slider.setMax(period/1000);
-        holder.slider.setProgress(PulseWidthModulation.getDutyCycle(holder.nameVal) / 1000);
+        holder.slider.setMax(holder.period / 1000);
+        holder.slider.setProgress(holder.dutyCycle / 1000);
 
-        // Save a copy of untouched seekbar thumb for redraw purposes
-        if (holder.sliderClean == null)
-            holder.sliderClean = holder.slider.getThumb().getConstantState().newDrawable();
-
-        // Write current duty cycle percentage on thumb
-        holder.slider.setThumb(writeOnDrawable(holder.slider.getThumb(),
-                (holder.slider.getProgress() * 100 / holder.slider.getMax()) + "%"));
+        // Show current duty cycle percentage on thumb
+        holder.thumb.setPercent(dutyPercent(holder.slider));
     }
 
-    public void addLEDListeners(final ViewHolder holder) {
-        // Create and set trigger spinner (aka dropdown menu) listener
-        holder.spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+    private static int dutyPercent(SeekBar slider) {
+        int max = slider.getMax();
+        return max > 0 ? slider.getProgress() * 100 / max : 0;
+    }
 
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                LightEmittingDiode.setLedTrigger(holder.nameVal,
-                        parent.getItemAtPosition(position).toString());
-                ((TextView) parent.getChildAt(0)).setTextColor(Color.BLACK);
+    // The listeners below are shared by every row of their type. Each resolves the
+    // holder its row currently shows from the widget's tag, which is null while binding.
+
+    // Trigger spinner (aka dropdown menu) listener
+    private final AdapterView.OnItemSelectedListener ledTriggerListener =
+            new AdapterView.OnItemSelectedListener() {
+
+        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+            ((TextView) parent.getChildAt(0)).setTextColor(Color.BLACK);
+            ViewHolder holder = (ViewHolder) parent.getTag();
+            if (holder == null)
+                return;
+            // setSelection() reports back later, after the row is tagged again
+            if (position == LedTriggerCatalog.get().entry(holder.device.name).getSelected()) {
+                countAvoidedWrite();
+                return;
             }
+            Hal.get().setLedTrigger(holder.device.name,
+                    parent.getItemAtPosition(position).toString());
+            LedTriggerCatalog.get().select(holder.device.name, position);
+        }
 
 
-            public void onNothingSelected(AdapterView<?> parent) {
+        public void onNothingSelected(AdapterView<?> parent) {
+        }
+    };
+
+    // LED brightness toggle listener
+    private final CompoundButton.OnCheckedChangeListener ledToggleListener =
+            new CompoundButton.OnCheckedChangeListener() {
+        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            ViewHolder holder = (ViewHolder) buttonView.getTag();
+            if (holder == null)
+                return;
+            if (isChecked == holder.checked) {
+                countAvoidedWrite();
+                return;
             }
-        });
-
-        // Create and set brightness toggle listener
-        holder.toggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                // isChecked will be true if the switch is in the On position
-                LightEmittingDiode.setLedValue(holder.nameVal, isChecked);
-                if (!isChecked && holder.spinner != null)
-                    holder.spinner.setSelection(0);
+            // isChecked will be true if the switch is in the On position
+            holder.checked = isChecked;
+            Hal.get().setLedValue(holder.device.name, isChecked);
+            if (!isChecked && holder.spinner != null) {
+                // Turning a LED off makes the driver drop its trigger; record that
+                // so the spinner's callback does not write "none" again
+                LedTriggerCatalog.get().select(holder.device.name, 0);
+                holder.spinner.setSelection(0);
             }
-        });
-    }
-
-    public void addGPIOListeners(final ViewHolder holder) {
-        // Create and set direction radio button group listener
-        holder.group.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
-
-            public void onCheckedChanged(RadioGroup group, int checkedId) {
-                GeneralPurposeIO.setGpioDirection(holder.nameVal, checkedId == R.id.rdioIn ?
-                        GeneralPurposeIO.Direction.IN : GeneralPurposeIO.Direction.OUT);
-                updateGPIO(holder);
+        }
+    };
+
+    // GPIO direction radio button group listener
+    private final RadioGroup.OnCheckedChangeListener gpioDirectionListener =
+            new RadioGroup.OnCheckedChangeListener() {
+
+        public void onCheckedChanged(RadioGroup group, int checkedId) {
+            ViewHolder holder = (ViewHolder) group.getTag();
+            if (holder == null)
+                return;
+            // Poller updates check() the sampled direction, which lands here too
+            boolean input = checkedId == R.id.rdioIn;
+            if (input == holder.input) {
+                countAvoidedWrite();
+                return;
             }
-        });
+            holder.input = input;
+            Hal.get().setGpioInput(holder.device.name, holder.input);
+            updateGPIO(holder);
+            if (_context instanceof MainActivity)
+                ((MainActivity) _context).onGpioDirectionChanged(holder.childPosition);
+        }
+    };
+
+    // GPIO header "set all / read all" listener
+    private final View.OnClickListener gpioBankListener = new View.OnClickListener() {
+        public void onClick(View v) {
+            if (!(_context instanceof MainActivity))
+                return;
+            MainActivity activity = (MainActivity) _context;
+            switch (v.getId()) {
+                case R.id.btnAllHigh:
+                    activity.setAllGpios(1);
+                    break;
+                case R.id.btnAllLow:
+                    activity.setAllGpios(0);
+                    break;
+                case R.id.btnReadAll:
+                    activity.readAllGpios();
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    // GPIO output value toggle listener
+    private final CompoundButton.OnCheckedChangeListener gpioToggleListener =
+            new CompoundButton.OnCheckedChangeListener() {
+        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            ViewHolder holder = (ViewHolder) buttonView.getTag();
+            if (holder == null)
+                return;
+            // isChecked will be true if the switch is in the On position
+            int value = isChecked ? 1 : 0;
+            if (value == holder.value) {
+                countAvoidedWrite();
+                return;
+            }
+            holder.value = value;
+            Hal.get().setGpioValue(holder.device.name, holder.value);
+            // The switch already shows the new value
+            holder.renderedValue = holder.value;
+        }
+    };
+
+    // PWM enable check box listener
+    private final CompoundButton.OnCheckedChangeListener pwmEnableListener =
+            new CompoundButton.OnCheckedChangeListener() {
+
+        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            ViewHolder holder = (ViewHolder) buttonView.getTag();
+            if (holder == null)
+                return;
+            if (isChecked == holder.checked) {
+                countAvoidedWrite();
+                return;
+            }
+            holder.checked = isChecked;
+            Hal.get().setPwmEnabled(holder.device.name, isChecked);
+        }
+    };
+
+    // PWM period edit box listener
+    private final TextView.OnEditorActionListener pwmPeriodListener =
+            new TextView.OnEditorActionListener() {
+        public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+            ViewHolder holder = (ViewHolder) v.getTag();
+            if (holder == null)
+                return false;
 
-        // Create and set output value toggle listener
-        holder.toggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                // isChecked will be true if the switch is in the On position
-                GeneralPurposeIO.setGpioValue(holder.nameVal, isChecked ? 1 : 0);
+            String newPeriod = v.getText().toString();
+            // Ignore empty strings or strings that are too long to avoid runtime exceptions
+            if (newPeriod.isEmpty() || newPeriod.length() > 8) {
+                Toast.makeText(_context, "Invalid period.", Toast.LENGTH_SHORT).show();
+                return false;
             }
-        });
-    }
 
-    public void addPWMListeners(final ViewHolder holder) {
-        // Create and set enable check box listener
-        holder.checkBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            // Record the int equivalent of the string entered
+            int val = Integer.parseInt(newPeriod);
 
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                PulseWidthModulation.setEnabled(holder.nameVal, isChecked);
+            if (val < 0) {
+                Toast.makeText(_context, "Must use a positive period.", Toast.LENGTH_SHORT).show();
+                return false;
             }
-        });
-
-        holder.editText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
-            public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
-                String newPeriod = v.getText().toString();
-                // Ignore empty strings or strings that are too long to avoid runtime exceptions
-                if (newPeriod.isEmpty() || newPeriod.length() > 8) {
-                    Toast.makeText(_context, "Invalid period.", Toast.LENGTH_SHORT).show();
-                    return false;
-                }
-
-                // Record the int equivalent of the string entered
-                int val = Integer.parseInt(newPeriod);
-
-                if (val < 0) {
-                    Toast.makeText(_context, "Must use a positive period.", Toast.LENGTH_SHORT).show();
-                    return false;
-                }
-
-                // Clear duty cycle, set new period, then reset duty cycle using previous percentage
-                int previousRatio = PulseWidthModulation.getDutyCycle(holder.nameVal) * 100 /
-                        PulseWidthModulation.getPeriod(holder.nameVal);
-                PulseWidthModulation.setDutyCycle(holder.nameVal, 0);
-                PulseWidthModulation.setPeriod(holder.nameVal, val * 1000);
-                PulseWidthModulation.setDutyCycle(holder.nameVal, val * 10 * previousRatio);
 
+            // Keep the duty cycle percentage while changing the period; the driver
+            // does not allow duty_cycle == period
+            int period = val * 1000;
+            if (period == holder.period) {
+                countAvoidedWrite();
                 v.clearFocus();
                 hideKeyboard(_context);
-
                 return false;
             }
-        });
+            int dutyCycle = holder.period > 0 ?
+                    (int) ((long) holder.dutyCycle * period / holder.period) : 0;
+            dutyCycle = Math.max(0, Math.min(dutyCycle, period - 1));
 
-        // Create and set duty cycle slider listener
-        holder.slider.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
-            public void onStartTrackingTouch(SeekBar seekBar) {}
-            public void onStopTrackingTouch(SeekBar seekBar) {}
+            // Every write happens as one batch on the PWM writer thread
+            if (_context instanceof MainActivity)
+                ((MainActivity) _context).pwmWriter.reconfigure(holder.device.name, holder.period,
+                        period, dutyCycle, new PwmReconfigured(holder));
 
-            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                // Convert progress value from nano to milliseconds
-                // -1 if value is max; pwm driver does not allow duty_cycle == period
-                progress = (progress == seekBar.getMax() ? progress * 1000 - 1 : progress * 1000);
+            v.clearFocus();
+            hideKeyboard(_context);
 
-                PulseWidthModulation.setDutyCycle(holder.nameVal, progress);
-
-                // Redraw thumb to remove old percentage, then place the new one
-                seekBar.setThumb(holder.sliderClean.getConstantState().newDrawable());
-                seekBar.setThumb(writeOnDrawable(seekBar.getThumb(),
-                        (progress / holder.slider.getMax() / 10) + "%"));
-            }
-        });
-    }
+            return false;
+        }
+    };
 
-    private Bitmap drawableToBitmap (Drawable drawable) {
-        Bitmap bitmap;
+    // Applies a finished period change to the holder that requested it
+    private class PwmReconfigured implements PwmWriter.Callback, Runnable {
+        private final ViewHolder holder;
+        private PwmWriter.Result result;
 
-        // If drawable contains native method, use that
-        if (drawable instanceof BitmapDrawable) {
-            BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
-            if(bitmapDrawable.getBitmap() != null) {
-                return bitmapDrawable.getBitmap();
-            }
+        PwmReconfigured(ViewHolder holder) {
+            this.holder = holder;
         }
 
-        // Single color bitmap will be created of 1x1 pixel
-        bitmap = Bitmap.createBitmap(Math.max(1, drawable.getIntrinsicWidth()),
-                                     Math.max(1, drawable.getIntrinsicHeight()),
-                                     Bitmap.Config.ARGB_8888);
-
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
+        public void onReconfigured(PwmWriter.Result result) {
+            this.result = result;
+            _context.runOnUiThread(this);
+        }
 
-        return bitmap;
+        public void run() {
+            Log.d(TAG, result.name + " reconfigured in " + result.latencyNanos / 1000 + " us");
+            if (!result.verified)
+                Toast.makeText(_context, "Period not applied.", Toast.LENGTH_SHORT).show();
+
+            // Show what the driver actually holds now
+            holder.period = result.period;
+            holder.dutyCycle = result.dutyCycle;
+            if (holder.view != null) {
+                holder.tagWidgets(null);
+                bindPWM(holder);
+                holder.tagWidgets(holder);
+            }
+        }
     }
 
-    private BitmapDrawable writeOnDrawable(Drawable drawable, String text){
-        // Convert drawable to bitmap
-        Bitmap bm = drawableToBitmap(drawable);
+    // PWM duty cycle slider listener
+    private final SeekBar.OnSeekBarChangeListener pwmSliderListener =
+            new SeekBar.OnSeekBarChangeListener() {
+        public void onStartTrackingTouch(SeekBar seekBar) {}
+
+        public void onStopTrackingTouch(SeekBar seekBar) {
+            ViewHolder holder = (ViewHolder) seekBar.getTag();
+            if (holder == null || !(_context instanceof MainActivity))
+                return;
+
+            // Whatever the rate limit held back, the final position always reaches the driver
+            PwmWriter writer = ((MainActivity) _context).pwmWriter;
+            writer.flush(holder.device.name);
+            Log.d(TAG, holder.device.name + ": " + writer.getWriteCount() + " duty cycle writes, " +
+                    writer.getCoalescedCount() + " coalesced");
+        }
 
-        Paint paint = new Paint();
-        paint.setStyle(Paint.Style.FILL);
-        paint.setColor(Color.BLACK);
-        paint.setTextSize(15);
+        public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+            ViewHolder holder = (ViewHolder) seekBar.getTag();
+            if (holder == null)
+                return;
+
+            // Convert progress value from nano to milliseconds
+            // -1 if value is max; pwm driver does not allow duty_cycle == period
+            progress = (progress == seekBar.getMax() ? progress * 1000 - 1 : progress * 1000);
+            if (progress == holder.dutyCycle) {
+                countAvoidedWrite();
+                return;
+            }
 
-        // Draw text onto bitmap using configured painter via canvas
-        Canvas canvas = new Canvas(bm);
-        canvas.drawText(text, 2, bm.getHeight() / 2, paint);
+            holder.dutyCycle = progress;
 
-        return new BitmapDrawable(_context.getResources(), bm);
-    }
+            // Queue the write; a drag only reaches sysfs at the writer's rate limit
+            if (_context instanceof MainActivity)
+                ((MainActivity) _context).pwmWriter.setDutyCycle(holder.device.name, progress);
+            else
+                Hal.get().setPwmDutyCycle(holder.device.name, progress);
+
+            // Switch the thumb to the cached rendering of the new percentage
+            holder.thumb.setPercent(dutyPercent(seekBar));
+        }
+    };
 
     public static void hideKeyboard(Activity activity) {
         InputMethodManager imm = (InputMethodManager) activity.getSystemService(Activity.INPUT_METHOD_SERVICE);
@@ -472,25 +837,91 @@ public class ExpandableListAdapter extends BaseExpandableListAdapter {
     public class ViewHolder {
         View view;
         TextView name;
-        String nameVal;
+        final Device device;
         TextView monitor;
         Switch toggle;
         RadioGroup group;
         int radioChecked;
+        int value; // last sampled gpio value or hwmon reading
+        boolean input; // last sampled gpio direction
+        SampleRing history; // hwmon readings kept by the sampling service
+        boolean attached; // holder's views are attached to the list and showing
+        boolean published; // attached state last reported to the activity
+        SparklineView sparkline;
+        boolean rendered; // renderedValue/renderedRadio reflect what the view shows
+        int renderedValue, renderedRadio;
+        boolean checked; // last known led brightness or pwm enable state
+        int period, dutyCycle; // last known pwm state (ns)
         Spinner spinner;
         CheckBox checkBox;
         EditText editText;
         SeekBar slider;
-        Drawable sliderClean;
+        ThumbRenderer.ThumbDrawable thumb;
         int groupPosition, childPosition;
-        String propText, propVal;
-
-        public ViewHolder(String propText) {
-            this.nameVal = propText
-                    .substring(propText.lastIndexOf('.') + 1, propText.indexOf(']'));
-            this.propText = propText;
-            this.propVal = propText
-                    .substring(propText.lastIndexOf('[') + 1, propText.lastIndexOf(']'));
+
+        // Look up the row's widgets; those missing from the row's layout stay null
+        void findViews(View row) {
+            view = row;
+            name = (TextView) row.findViewById(R.id.lblListName);
+            monitor = (TextView) row.findViewById(R.id.lblListMonitor);
+            sparkline = (SparklineView) row.findViewById(R.id.lblListSparkline);
+            toggle = (Switch) row.findViewById(R.id.lblListSwitch);
+            group = (RadioGroup) row.findViewById(R.id.lblListRadioGroup);
+            spinner = (Spinner) row.findViewById(R.id.lblListSpinner);
+            checkBox = (CheckBox) row.findViewById(R.id.lblCheckBox);
+            editText = (EditText) row.findViewById(R.id.lblEditText);
+            slider = (SeekBar) row.findViewById(R.id.lblListSlider);
+            thumb = slider == null ? null : (ThumbRenderer.ThumbDrawable) slider.getThumb();
+        }
+
+        // Take over the widgets of a recycled row from the holder that showed it last
+        void takeViews(ViewHolder other) {
+            view = other.view;
+            name = other.name;
+            monitor = other.monitor;
+            sparkline = other.sparkline;
+            toggle = other.toggle;
+            group = other.group;
+            spinner = other.spinner;
+            checkBox = other.checkBox;
+            editText = other.editText;
+            slider = other.slider;
+            thumb = other.thumb;
+            other.clearViews();
+        }
+
+        // Forget the row, so pollers stop updating it
+        void clearViews() {
+            view = null;
+            name = monitor = null;
+            sparkline = null;
+            toggle = null;
+            group = null;
+            spinner = null;
+            checkBox = null;
+            editText = null;
+            slider = null;
+            thumb = null;
+        }
+
+        // Point the shared listeners at a holder, or at nothing while binding
+        void tagWidgets(ViewHolder holder) {
+            if (toggle != null)
+                toggle.setTag(holder);
+            if (group != null)
+                group.setTag(holder);
+            if (spinner != null)
+                spinner.setTag(holder);
+            if (checkBox != null)
+                checkBox.setTag(holder);
+            if (editText != null)
+                editText.setTag(holder);
+            if (slider != null)
+                slider.setTag(holder);
+        }
+
+        public ViewHolder(Device device) {
+            this.device = device;
         }
     }
 }
\ No newline at end of file
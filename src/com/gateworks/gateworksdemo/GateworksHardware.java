@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.gateworks.gateworksutil.GeneralPurposeIO;
+import com.gateworks.gateworksutil.HardwareMonitor;
+import com.gateworks.gateworksutil.LightEmittingDiode;
+import com.gateworks.gateworksutil.PulseWidthModulation;
+
+/**
+ * The board backend: hands every call to the GateworksUtil library.
+ *
+ * The hw.* system properties name the board's devices, but say nothing about
+ * whether a device is there right now. The device list therefore holds the
+ * named devices whose node is present in the sysfs class directories the
+ * HotplugWatcher observes, and a rescan only lists those directories again;
+ * the properties are read once per process. A class directory that cannot
+ * be listed leaves its devices as the properties name them.
+ */
+public class GateworksHardware implements Hardware {
+    private final PropertyIndex props; // null for the system properties
+    private PropertyIndex inventory;
+
+    public GateworksHardware() {
+        this(null);
+    }
+
+    // Names the devices from the given properties instead, e.g. on a fake tree
+    GateworksHardware(PropertyIndex props) {
+        this.props = props;
+    }
+
+    private PropertyIndex props() {
+        return props != null ? props : PropertyIndex.get();
+    }
+
+    public synchronized PropertyIndex listDevices(boolean rescan) {
+        if (inventory == null || rescan)
+            inventory = scanInventory(props());
+        return inventory;
+    }
+
+    private static PropertyIndex scanInventory(PropertyIndex props) {
+        StringBuilder dump = new StringBuilder();
+        for (Device.Kind kind : Device.Kind.values()) {
+            String classDir = SysfsPaths.getRoot() + "/class/" + classOf(kind);
+            String[] entries = new File(classDir).list();
+            if (entries != null)
+                Arrays.sort(entries);
+            for (String line : props.getCategory(kind.category)) {
+                Device device = Device.scan(kind, line);
+                if (device != null && (entries == null || isPresent(device, classDir, entries)))
+                    dump.append(line).append('\n');
+            }
+        }
+        return PropertyIndex.parse(dump.toString());
+    }
+
+    private static String classOf(Device.Kind kind) {
+        switch (kind) {
+            case LED:
+                return "leds";
+            case GPIO:
+                return "gpio";
+            case HWMON:
+                return "hwmon";
+            default:
+                return "pwm";
+        }
+    }
+
+    // entries is the sorted listing of the device's class directory
+    private static boolean isPresent(Device device, String classDir, String[] entries) {
+        switch (device.kind) {
+            case LED:
+                // The class directory is named after the LED, which the property
+                // name or value may carry
+                return Arrays.binarySearch(entries, device.name) >= 0 ||
+                        Arrays.binarySearch(entries, device.value) >= 0;
+            case GPIO:
+                return Arrays.binarySearch(entries, "gpio" + device.value) >= 0 ||
+                        isOnChip(device.value, classDir, entries);
+            case HWMON:
+                // Only inputs given by path can be checked; the rest is up to GateworksUtil
+                return device.path == null || new File(device.path).exists();
+            default:
+                return isPwmPresent(device.value, classDir, entries);
+        }
+    }
+
+    // PWM channels live below their chip and are exported on use, so a channel is
+    // present while its chip is and has that many channels. Values that do not name
+    // the chip, as in "pwmchip0/pwm1", cannot be checked.
+    private static boolean isPwmPresent(String value, String classDir, String[] entries) {
+        int start = value.indexOf("pwmchip");
+        if (start < 0)
+            return true;
+        int end = start + "pwmchip".length();
+        while (end < value.length() && Character.isDigit(value.charAt(end)))
+            end++;
+        String chip = value.substring(start, end);
+        if (Arrays.binarySearch(entries, chip) < 0)
+            return false;
+
+        String channel = value.substring(end);
+        if (!channel.startsWith("/pwm"))
+            return true;
+        try {
+            return Integer.parseInt(channel.substring(4).trim())
+                    < readInt(classDir + "/" + chip + "/npwm");
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // An unexported gpio is present if one of the gpio chips covers its number
+    private static boolean isOnChip(String value, String classDir, String[] entries) {
+        int number;
+        try {
+            number = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return true; // not a gpio number, nothing to check it against
+        }
+        for (String entry : entries) {
+            if (!entry.startsWith("gpiochip"))
+                continue;
+            int base = readInt(classDir + "/" + entry + "/base");
+            int count = readInt(classDir + "/" + entry + "/ngpio");
+            if (number >= base && number < base + count)
+                return true;
+        }
+        return false;
+    }
+
+    private static int readInt(String path) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(path));
+            try {
+                String line = br.readLine();
+                return line == null ? -1 : Integer.parseInt(line.trim());
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public List<String> getAllLedTriggers(String name) {
+        return LightEmittingDiode.getAllLedTriggers(name);
+    }
+
+    public String getLedTrigger(String name) {
+        return LightEmittingDiode.getLedTrigger(name);
+    }
+
+    public void setLedTrigger(String name, String trigger) {
+        LightEmittingDiode.setLedTrigger(name, trigger);
+    }
+
+    public boolean getLedValue(String name) {
+        return LightEmittingDiode.getLedValue(name);
+    }
+
+    public void setLedValue(String name, boolean on) {
+        LightEmittingDiode.setLedValue(name, on);
+    }
+
+    public int getGpioValue(String name) {
+        return GeneralPurposeIO.getGpioValue(name);
+    }
+
+    public void setGpioValue(String name, int value) {
+        GeneralPurposeIO.setGpioValue(name, value);
+    }
+
+    public boolean isGpioInput(String name) {
+        return GeneralPurposeIO.getGpioDirection(name) == GeneralPurposeIO.Direction.IN;
+    }
+
+    public void setGpioInput(String name, boolean input) {
+        GeneralPurposeIO.setGpioDirection(name, input ?
+                GeneralPurposeIO.Direction.IN : GeneralPurposeIO.Direction.OUT);
+    }
+
+    // gpio.* properties carry the kernel gpio number
+    public String getGpioDir(String name) {
+        String number = props().getValue("hw.gpio." + name, null);
+        return number == null ? null : SysfsPaths.gpioDir(number);
+    }
+
+    public int getHwmonValue(String name) {
+        return HardwareMonitor.getHwmonValue(name);
+    }
+
+    public boolean getPwmEnabled(String name) {
+        return PulseWidthModulation.getEnabled(name);
+    }
+
+    public void setPwmEnabled(String name, boolean enabled) {
+        PulseWidthModulation.setEnabled(name, enabled);
+    }
+
+    public int getPwmPeriod(String name) {
+        return PulseWidthModulation.getPeriod(name);
+    }
+
+    public void setPwmPeriod(String name, int period) {
+        PulseWidthModulation.setPeriod(name, period);
+    }
+
+    public int getPwmDutyCycle(String name) {
+        return PulseWidthModulation.getDutyCycle(name);
+    }
+
+    public void setPwmDutyCycle(String name, int dutyCycle) {
+        PulseWidthModulation.setDutyCycle(name, dutyCycle);
+    }
+}
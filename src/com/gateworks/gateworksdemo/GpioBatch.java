@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Reads or sets a whole bank of gpios in one call.
+ *
+ * Every request runs on a dedicated I/O thread that keeps the value files of
+ * the bank open, so the per-pin work is a single positional read or write and
+ * the pins of one request are touched back to back with minimal skew. Pins
+ * whose value file cannot be opened go through the Hal backend instead.
+ *
+ * The GPIO character device would let a whole bank be set with one ioctl,
+ * but that needs native code; this stays on sysfs so it works from plain Java.
+ */
+public class GpioBatch implements Runnable {
+    private static final String TAG = "GpioBatch";
+
+    public interface Callback {
+        // Called on the I/O thread with the values read or written, indexed like
+        // the request's pins, and the time spent between the first and last pin
+        void onComplete(int[] pins, int[] values, long elapsedNanos);
+    }
+
+    private static final Runnable STOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private final String[] names;
+    private final String[] valuePaths;
+    private final RandomAccessFile[] files;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(8);
+    private final LinkedBlockingQueue<Runnable> requests = new LinkedBlockingQueue<Runnable>();
+    private final Thread worker;
+
+    // names are the gpio names from the properties, valuePaths the matching sysfs value files
+    public GpioBatch(String[] names, String[] valuePaths) {
+        this.names = names;
+        this.valuePaths = valuePaths;
+        this.files = new RandomAccessFile[names.length];
+        worker = new Thread(this, TAG);
+        worker.start();
+    }
+
+    // Reads the given pins back to back
+    public void read(final int[] pins, final Callback callback) {
+        requests.add(new Runnable() {
+            public void run() {
+                int[] values = new int[pins.length];
+                long start = System.nanoTime();
+                for (int i = 0; i < pins.length; i++)
+                    values[i] = readPin(pins[i]);
+                long elapsed = System.nanoTime() - start;
+                LatencyStats.recordNanos(LatencyStats.OP_GPIO_BATCH, elapsed);
+                callback.onComplete(pins, values, elapsed);
+            }
+        });
+    }
+
+    // Sets every given pin to the same value back to back
+    public void setAll(final int[] pins, final int value, final Callback callback) {
+        requests.add(new Runnable() {
+            public void run() {
+                int[] values = new int[pins.length];
+                long start = System.nanoTime();
+                for (int i = 0; i < pins.length; i++) {
+                    writePin(pins[i], value);
+                    values[i] = value;
+                }
+                long elapsed = System.nanoTime() - start;
+                LatencyStats.recordNanos(LatencyStats.OP_GPIO_BATCH, elapsed);
+                callback.onComplete(pins, values, elapsed);
+            }
+        });
+    }
+
+    // Closes the held files and stops the I/O thread once queued requests are done
+    public void close() {
+        requests.add(STOP);
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (true) {
+            Runnable request;
+            try {
+                request = requests.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (request == STOP)
+                break;
+
+            try {
+                request.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "GPIO batch failed", e);
+            }
+        }
+
+        for (int pin = 0; pin < files.length; pin++)
+            closePin(pin);
+    }
+
+    // Null for pins without a value file; those go through the Hal backend
+    private RandomAccessFile file(int pin) {
+        if (files[pin] == null && valuePaths[pin] != null) {
+            try {
+                files[pin] = new RandomAccessFile(valuePaths[pin], "rw");
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return files[pin];
+    }
+
+    private int readPin(int pin) {
+        RandomAccessFile file = file(pin);
+        if (file != null) {
+            buf.clear();
+            try {
+                if (file.getChannel().read(buf, 0) > 0)
+                    return buf.get(0) == '1' ? 1 : 0;
+            } catch (IOException e) {
+                closePin(pin);
+            }
+        }
+        return Hal.get().getGpioValue(names[pin]);
+    }
+
+    private void writePin(int pin, int value) {
+        RandomAccessFile file = file(pin);
+        if (file != null) {
+            buf.clear();
+            buf.put((byte) (value != 0 ? '1' : '0'));
+            buf.flip();
+            try {
+                file.getChannel().write(buf, 0);
+                return;
+            } catch (IOException e) {
+                closePin(pin);
+            }
+        }
+        Hal.get().setGpioValue(names[pin], value);
+    }
+
+    private void closePin(int pin) {
+        if (files[pin] == null)
+            return;
+        try {
+            files[pin].close();
+        } catch (IOException e) {
+            // ignore
+        }
+        files[pin] = null;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+import android.util.Log;
+
+/**
+ * Watches input gpios for value changes without a fixed polling tick.
+ *
+ * Each input pin gets "both" written to its sysfs edge attribute and its value
+ * file is handed to poll(2); the kernel wakes the watcher with POLLPRI when the
+ * line changes. Pins whose edge attribute is missing or read-only fall back to
+ * polling that backs off while the value is stable and tightens again once it
+ * changes; a missing attribute is never created, since a plain file would not
+ * report POLLPRI. Only pins whose value actually changed are reported.
+ *
+ * Pins without edge support fall back to polling, paced per pin by a
+ * PollPolicy. So do pins without a readable sysfs node (unexported, or a
+ * backend that has no sysfs tree, given as a null directory); those are read
+ * through the Hal backend. Edges are set back to "none" when the watcher
+ * stops or re-arms.
+ *
+ * The pin directories are passed in, so the watcher can be run against a fake
+ * tree where each value file is a FIFO: writing to the FIFO wakes poll the same
+ * way an edge interrupt does. A FIFO whose writer went away is reopened, since
+ * it would otherwise report POLLHUP on every poll.
+ */
+public class GpioEdgeWatcher implements Runnable {
+    private static final String TAG = "GpioEdgeWatcher";
+
+    // Default fallback polling bounds for pins without edge support (ms)
+    static final int MIN_POLL_INTERVAL = 20;
+    static final int MAX_POLL_INTERVAL = 500;
+    static final int BACKGROUND_POLL_INTERVAL = 5000; // pins whose rows are off screen
+
+    public interface Listener {
+        // Called on the watcher thread with the pin index and its new value
+        void onGpioChanged(int pin, int value);
+    }
+
+    private final String[] names;
+    private final String[] pinDirs;
+    private final PollPolicy policy;
+    private final Listener listener;
+    private final int[] lastValue;
+    private final byte[] buf = new byte[8];
+
+    // Per pin state, rebuilt every time the pins are armed
+    private FileDescriptor[] valueFds;
+    private boolean[] edgeArmed; // edge driven: edge attribute armed, or a FIFO stand-in
+    private boolean[] isFifo;
+    private boolean[] halPolled; // no usable value file; read through the Hal backend
+
+    private FileDescriptor wakeRead, wakeWrite;
+    private volatile boolean rearm = true;
+    private volatile boolean stopped = false;
+    private Thread thread;
+
+    // names are the gpio names the Hal backend knows; pinDirs may hold null for pins
+    // without a sysfs directory
+    public GpioEdgeWatcher(String[] names, String[] pinDirs, PollPolicy policy, Listener listener) {
+        this.names = names;
+        this.pinDirs = pinDirs;
+        this.policy = policy;
+        this.listener = listener;
+        this.lastValue = new int[pinDirs.length];
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        try {
+            FileDescriptor[] pipe = Os.pipe();
+            wakeRead = pipe[0];
+            wakeWrite = pipe[1];
+        } catch (ErrnoException e) {
+            Log.e(TAG, "Unable to create wake pipe", e);
+            return;
+        }
+        thread = new Thread(this, TAG);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        wake();
+    }
+
+    // Re-read pin directions and re-arm, e.g. after a pin switched between in and out
+    public void rearm() {
+        rearm = true;
+        wake();
+    }
+
+    // Recomputes the fallback poll timeout, e.g. after the policy made a pin due
+    public void reschedule() {
+        wake();
+    }
+
+    private void wake() {
+        if (wakeWrite == null)
+            return;
+        try {
+            Os.write(wakeWrite, buf, 0, 1);
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.w(TAG, "Unable to wake watcher", e);
+        }
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        StructPollfd[] fds = null;
+
+        while (!stopped) {
+            if (rearm) {
+                rearm = false;
+                closePins();
+                fds = armPins();
+            }
+
+            long now = System.nanoTime() / 1000000;
+            int timeout = nextFallbackTimeout(now);
+
+            try {
+                for (StructPollfd fd : fds)
+                    fd.revents = 0;
+                Os.poll(fds, timeout);
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    Log.e(TAG, "poll failed", e);
+                    break;
+                }
+            }
+
+            // Drain the wake pipe; stop/rearm flags are checked at the top of the loop
+            if (fds[0].revents != 0)
+                drainWakePipe();
+
+            boolean hungUp = false;
+            for (int i = 1; i < fds.length; i++) {
+                if (fds[i].revents == 0)
+                    continue;
+                int pin = (Integer) fds[i].userData;
+                sample(pin);
+                // The FIFO stand-in's writer closed; it would report POLLHUP forever
+                if ((fds[i].revents & OsConstants.POLLHUP) != 0) {
+                    reopenFifo(pin);
+                    hungUp = true;
+                }
+            }
+            if (hungUp)
+                fds = pollSet();
+
+            now = System.nanoTime() / 1000000;
+            for (int pin = 0; pin < pinDirs.length; pin++) {
+                if (!isPolled(pin) || !policy.isDue(pin, now))
+                    continue;
+                policy.onSample(pin, now, sample(pin));
+            }
+        }
+
+        closePins();
+        closeQuietly(wakeRead);
+        closeQuietly(wakeWrite);
+    }
+
+    // Opens the value file of every input pin and arms edges where supported.
+    // Inputs without a usable value file are left to Hal polling.
+    private StructPollfd[] armPins() {
+        int count = pinDirs.length;
+        valueFds = new FileDescriptor[count];
+        edgeArmed = new boolean[count];
+        isFifo = new boolean[count];
+        halPolled = new boolean[count];
+
+        for (int pin = 0; pin < count; pin++) {
+            String direction = pinDirs[pin] == null ? null :
+                    readLine(pinDirs[pin] + "/direction");
+            boolean input = direction != null ? direction.equals("in") :
+                    Hal.get().isGpioInput(names[pin]);
+            if (!input)
+                continue;
+            policy.reset(pin);
+            lastValue[pin] = -1;
+
+            valueFds[pin] = direction == null ? null : openValue(pin);
+            if (valueFds[pin] == null) {
+                halPolled[pin] = true;
+                sample(pin);
+                continue;
+            }
+
+            edgeArmed[pin] = writeLine(pinDirs[pin] + "/edge", "both");
+
+            // The initial read clears any pending edge, seeds the last known value
+            // and finds out whether the value file is a FIFO
+            sample(pin);
+            if (isFifo[pin])
+                edgeArmed[pin] = true;
+        }
+        return pollSet();
+    }
+
+    // O_NONBLOCK keeps a FIFO stand-in from blocking open until a writer appears
+    private FileDescriptor openValue(int pin) {
+        try {
+            return Os.open(pinDirs[pin] + "/value",
+                    OsConstants.O_RDONLY | OsConstants.O_NONBLOCK, 0);
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Unable to open " + pinDirs[pin] + "/value", e);
+            return null;
+        }
+    }
+
+    // A fresh reader does not see the old writer's hangup; if the FIFO is gone the
+    // pin is polled through the Hal instead
+    private void reopenFifo(int pin) {
+        closeQuietly(valueFds[pin]);
+        valueFds[pin] = openValue(pin);
+        if (valueFds[pin] == null) {
+            edgeArmed[pin] = false;
+            halPolled[pin] = true;
+        }
+    }
+
+    // Pins read on the PollPolicy's schedule rather than on edges
+    private boolean isPolled(int pin) {
+        return halPolled[pin] || (valueFds[pin] != null && !edgeArmed[pin]);
+    }
+
+    // Slot 0 of the poll set is always the wake pipe, followed by the edge armed pins
+    private StructPollfd[] pollSet() {
+        int armed = 0;
+        for (int pin = 0; pin < pinDirs.length; pin++)
+            if (edgeArmed[pin])
+                armed++;
+
+        StructPollfd[] fds = new StructPollfd[armed + 1];
+        fds[0] = new StructPollfd();
+        fds[0].fd = wakeRead;
+        fds[0].events = (short) OsConstants.POLLIN;
+
+        int slot = 1;
+        for (int pin = 0; pin < pinDirs.length; pin++) {
+            if (!edgeArmed[pin])
+                continue;
+            StructPollfd fd = new StructPollfd();
+            fd.fd = valueFds[pin];
+            // sysfs attributes always report POLLIN, so only wait for POLLPRI there
+            fd.events = (short) (isFifo[pin] ? OsConstants.POLLIN :
+                    OsConstants.POLLPRI | OsConstants.POLLERR);
+            fd.userData = pin;
+            fds[slot++] = fd;
+        }
+        return fds;
+    }
+
+    // Re-reads a pin's value from offset 0 and reports it if it changed
+    private boolean sample(int pin) {
+        if (halPolled[pin])
+            return report(pin, Hal.get().getGpioValue(names[pin]));
+
+        int len;
+        try {
+            len = Os.pread(valueFds[pin], buf, 0, buf.length, 0);
+        } catch (ErrnoException e) {
+            // FIFOs are not seekable, consume whatever was written instead
+            if (e.errno != OsConstants.ESPIPE)
+                return false;
+            isFifo[pin] = true;
+            len = readFifo(pin);
+        } catch (InterruptedIOException e) {
+            return false;
+        }
+        if (len <= 0)
+            return false;
+        // A FIFO may hold several writes; the last one is the current value
+        int value = buf[0] == '1' ? 1 : 0;
+        if (isFifo[pin])
+            for (int i = 0; i < len; i++)
+                if (buf[i] == '0' || buf[i] == '1')
+                    value = buf[i] - '0';
+        return report(pin, value);
+    }
+
+    private boolean report(int pin, int value) {
+        if (value == lastValue[pin])
+            return false;
+
+        boolean first = lastValue[pin] < 0;
+        lastValue[pin] = value;
+        if (!first)
+            listener.onGpioChanged(pin, value);
+        return true;
+    }
+
+    private int readFifo(int pin) {
+        try {
+            return Os.read(valueFds[pin], buf, 0, buf.length);
+        } catch (ErrnoException | InterruptedIOException e) {
+            return -1;
+        }
+    }
+
+    private int nextFallbackTimeout(long now) {
+        long next = Long.MAX_VALUE;
+        for (int pin = 0; pin < pinDirs.length; pin++)
+            if (isPolled(pin))
+                next = Math.min(next, policy.getNextDue(pin));
+
+        // Block indefinitely when every pin is edge driven
+        if (next == Long.MAX_VALUE)
+            return -1;
+        return (int) Math.max(0, next - now);
+    }
+
+    private void drainWakePipe() {
+        try {
+            Os.read(wakeRead, buf, 0, buf.length);
+        } catch (ErrnoException | InterruptedIOException e) {
+            Log.w(TAG, "Unable to drain wake pipe", e);
+        }
+    }
+
+    // Closes the value files and disarms edges, so no interrupt is left enabled
+    private void closePins() {
+        if (valueFds == null)
+            return;
+        for (int pin = 0; pin < valueFds.length; pin++) {
+            if (edgeArmed[pin])
+                writeLine(pinDirs[pin] + "/edge", "none");
+            edgeArmed[pin] = false;
+            closeQuietly(valueFds[pin]);
+            valueFds[pin] = null;
+        }
+    }
+
+    private static void closeQuietly(FileDescriptor fd) {
+        if (fd == null)
+            return;
+        try {
+            Os.close(fd);
+        } catch (ErrnoException e) {
+            // ignore
+        }
+    }
+
+    private static String readLine(String path) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(path));
+            try {
+                String line = br.readLine();
+                return line == null ? null : line.trim();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Writes an existing attribute; never creates one
+    private static boolean writeLine(String path, String value) {
+        if (!new File(path).exists())
+            return false;
+        try {
+            FileOutputStream out = new FileOutputStream(path);
+            try {
+                out.write(value.getBytes());
+            } finally {
+                out.close();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
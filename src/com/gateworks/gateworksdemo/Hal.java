@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * Holds the Hardware backend used by the whole app.
+ *
+ * The backend is picked on first use from the persist.gw.hal property:
+ * "gateworks" (the default) for the board, "sysfs:<dir>" for a fake sysfs
+ * tree rooted at <dir>, or "sim" for the in-memory simulator. Code that runs
+ * off a board, such as a benchmark on a plain JVM, calls set() first, which
+ * also keeps getprop from being run.
+ *
+ * While LatencyStats are enabled, get() returns the backend wrapped in an
+ * InstrumentedHardware; otherwise callers get the backend itself.
+ */
+public class Hal {
+    static final String PROPERTY = "persist.gw.hal";
+
+    private static Hardware backend;
+    private static boolean instrumented;
+    private static volatile Hardware instance;
+
+    public static Hardware get() {
+        Hardware hw = instance;
+        if (hw != null)
+            return hw;
+        synchronized (Hal.class) {
+            if (instance == null)
+                set(create(PropertyIndex.get().getValue(PROPERTY, "gateworks")));
+            return instance;
+        }
+    }
+
+    public static synchronized void set(Hardware hw) {
+        backend = hw;
+        instance = instrumented ? new InstrumentedHardware(hw) : hw;
+    }
+
+    // Puts the timing wrapper in front of the backend, or takes it away
+    static synchronized void setInstrumented(boolean enable) {
+        instrumented = enable;
+        if (backend != null)
+            set(backend);
+    }
+
+    static Hardware create(String spec) {
+        if (spec.equals("sim"))
+            return new SimulatedHardware();
+        if (spec.startsWith("sysfs:")) {
+            // Direct sysfs readers and the hotplug watcher look at the same tree
+            String root = spec.substring("sysfs:".length());
+            SysfsPaths.setRoot(root);
+            return new SysfsHardware(root);
+        }
+        return new GateworksHardware();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.List;
+
+/**
+ * Access to the board's LEDs, gpios, hwmons and PWMs, addressed by the names
+ * found in the getprop properties.
+ *
+ * The app reaches hardware only through this interface, via Hal.get(), so
+ * the same code can run against GateworksUtil on a board, against a fake
+ * sysfs tree, or against a simulator on a plain JVM.
+ */
+public interface Hardware {
+    // Lists the devices on offer as getprop style "[hw.<category>.<name>]: [<value>]"
+    // lines. Without rescan the backend may hand back what it found before.
+    PropertyIndex listDevices(boolean rescan);
+
+    List<String> getAllLedTriggers(String name);
+    String getLedTrigger(String name);
+    void setLedTrigger(String name, String trigger);
+    boolean getLedValue(String name);
+    void setLedValue(String name, boolean on);
+
+    int getGpioValue(String name);
+    void setGpioValue(String name, int value);
+    boolean isGpioInput(String name);
+    void setGpioInput(String name, boolean input);
+    // Directory holding the gpio's value, direction and edge attributes, or null
+    // when the backend has no such node and the gpio is only reachable through here
+    String getGpioDir(String name);
+
+    int getHwmonValue(String name);
+
+    boolean getPwmEnabled(String name);
+    void setPwmEnabled(String name, boolean enabled);
+    int getPwmPeriod(String name); // ns
+    void setPwmPeriod(String name, int period);
+    int getPwmDutyCycle(String name); // ns
+    void setPwmDutyCycle(String name, int dutyCycle);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.FileObserver;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Notices devices that come or go while the app runs.
+ *
+ * The sysfs class directories of every device category are watched with
+ * inotify, and any entry created or removed there triggers a rescan of the
+ * backend's device list once things have settled for SETTLE_DELAY. sysfs
+ * does not reliably report kernel created entries to inotify, so the list is
+ * also rescanned every RESCAN_INTERVAL. The listener only hears about scans
+ * that found a different set of devices.
+ */
+public class HotplugWatcher implements Runnable {
+    private static final String TAG = "HotplugWatcher";
+
+    static final String[] CLASSES = {"leds", "gpio", "hwmon", "pwm"};
+    static final int RESCAN_INTERVAL = 60000; // ms
+    static final int SETTLE_DELAY = 500; // ms
+
+    public interface Listener {
+        // Called on the watcher thread with the new device list
+        void onDevicesChanged(DeviceTable devices);
+    }
+
+    private final Listener listener;
+    private final ArrayList<FileObserver> observers = new ArrayList<FileObserver>();
+    private DeviceTable devices;
+    private volatile boolean pending;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    // devices is the list the caller is currently showing
+    public HotplugWatcher(DeviceTable devices, Listener listener) {
+        this.devices = devices;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        thread = new Thread(this, TAG);
+        for (String cls : CLASSES) {
+            FileObserver observer = new FileObserver(SysfsPaths.getRoot() + "/class/" + cls,
+                    FileObserver.CREATE | FileObserver.DELETE |
+                    FileObserver.MOVED_FROM | FileObserver.MOVED_TO) {
+                public void onEvent(int event, String path) {
+                    rescan();
+                }
+            };
+            observer.startWatching();
+            observers.add(observer);
+        }
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        for (FileObserver observer : observers)
+            observer.stopWatching();
+        observers.clear();
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    // Asks for a scan once the current burst of changes has settled
+    public void rescan() {
+        pending = true;
+        LockSupport.unpark(thread);
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (!stopped) {
+            if (!pending)
+                LockSupport.parkNanos(this, RESCAN_INTERVAL * 1000000L);
+
+            // Exporting a whole chip fires a burst of events; scan once after the last.
+            // A wakeup left over from the burst must not cut the wait short.
+            while (pending && !stopped) {
+                pending = false;
+                long deadline = System.nanoTime() + SETTLE_DELAY * 1000000L;
+                long left;
+                while (!pending && !stopped && (left = deadline - System.nanoTime()) > 0)
+                    LockSupport.parkNanos(this, left);
+            }
+            if (stopped)
+                break;
+
+            try {
+                DeviceTable scanned = DeviceTable.scan(Hal.get().listDevices(true));
+                if (!devices.sameDevices(scanned)) {
+                    devices = scanned;
+                    listener.onDevicesChanged(scanned);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Device scan failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.List;
+
+/**
+ * Hardware wrapper that times every call into LatencyStats before handing it
+ * to the real backend. Hal only uses it while stats are enabled.
+ */
+public class InstrumentedHardware implements Hardware {
+    private final Hardware hw;
+
+    public InstrumentedHardware(Hardware hw) {
+        this.hw = hw;
+    }
+
+    public PropertyIndex listDevices(boolean rescan) {
+        return hw.listDevices(rescan);
+    }
+
+    public List<String> getAllLedTriggers(String name) {
+        long t = LatencyStats.start();
+        List<String> result = hw.getAllLedTriggers(name);
+        LatencyStats.record(LatencyStats.OP_LED_TRIGGERS, t);
+        return result;
+    }
+
+    public String getLedTrigger(String name) {
+        long t = LatencyStats.start();
+        String result = hw.getLedTrigger(name);
+        LatencyStats.record(LatencyStats.OP_LED_READ, t);
+        return result;
+    }
+
+    public void setLedTrigger(String name, String trigger) {
+        long t = LatencyStats.start();
+        hw.setLedTrigger(name, trigger);
+        LatencyStats.record(LatencyStats.OP_LED_WRITE, t);
+    }
+
+    public boolean getLedValue(String name) {
+        long t = LatencyStats.start();
+        boolean result = hw.getLedValue(name);
+        LatencyStats.record(LatencyStats.OP_LED_READ, t);
+        return result;
+    }
+
+    public void setLedValue(String name, boolean on) {
+        long t = LatencyStats.start();
+        hw.setLedValue(name, on);
+        LatencyStats.record(LatencyStats.OP_LED_WRITE, t);
+    }
+
+    public int getGpioValue(String name) {
+        long t = LatencyStats.start();
+        int result = hw.getGpioValue(name);
+        LatencyStats.record(LatencyStats.OP_GPIO_READ, t);
+        return result;
+    }
+
+    public void setGpioValue(String name, int value) {
+        long t = LatencyStats.start();
+        hw.setGpioValue(name, value);
+        LatencyStats.record(LatencyStats.OP_GPIO_WRITE, t);
+    }
+
+    public boolean isGpioInput(String name) {
+        long t = LatencyStats.start();
+        boolean result = hw.isGpioInput(name);
+        LatencyStats.record(LatencyStats.OP_GPIO_READ, t);
+        return result;
+    }
+
+    public void setGpioInput(String name, boolean input) {
+        long t = LatencyStats.start();
+        hw.setGpioInput(name, input);
+        LatencyStats.record(LatencyStats.OP_GPIO_WRITE, t);
+    }
+
+    // Only resolves a path, so there is nothing to time
+    public String getGpioDir(String name) {
+        return hw.getGpioDir(name);
+    }
+
+    public int getHwmonValue(String name) {
+        long t = LatencyStats.start();
+        int result = hw.getHwmonValue(name);
+        LatencyStats.record(LatencyStats.OP_HWMON_READ, t);
+        return result;
+    }
+
+    public boolean getPwmEnabled(String name) {
+        long t = LatencyStats.start();
+        boolean result = hw.getPwmEnabled(name);
+        LatencyStats.record(LatencyStats.OP_PWM_READ, t);
+        return result;
+    }
+
+    public void setPwmEnabled(String name, boolean enabled) {
+        long t = LatencyStats.start();
+        hw.setPwmEnabled(name, enabled);
+        LatencyStats.record(LatencyStats.OP_PWM_WRITE, t);
+    }
+
+    public int getPwmPeriod(String name) {
+        long t = LatencyStats.start();
+        int result = hw.getPwmPeriod(name);
+        LatencyStats.record(LatencyStats.OP_PWM_READ, t);
+        return result;
+    }
+
+    public void setPwmPeriod(String name, int period) {
+        long t = LatencyStats.start();
+        hw.setPwmPeriod(name, period);
+        LatencyStats.record(LatencyStats.OP_PWM_WRITE, t);
+    }
+
+    public int getPwmDutyCycle(String name) {
+        long t = LatencyStats.start();
+        int result = hw.getPwmDutyCycle(name);
+        LatencyStats.record(LatencyStats.OP_PWM_READ, t);
+        return result;
+    }
+
+    public void setPwmDutyCycle(String name, int dutyCycle) {
+        long t = LatencyStats.start();
+        hw.setPwmDutyCycle(name, dutyCycle);
+        LatencyStats.record(LatencyStats.OP_PWM_WRITE, t);
+    }
+}
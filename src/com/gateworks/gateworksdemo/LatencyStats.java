@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts and latency histograms for the app's hot paths.
+ *
+ * Call sites bracket an operation with start() and record():
+ *
+ *   long t = LatencyStats.start();
+ *   ...
+ *   LatencyStats.record(LatencyStats.OP_GPIO_READ, t);
+ *
+ * While disabled, start() returns 0 and record() ignores it, so the cost is
+ * one volatile read. Hardware calls are timed by InstrumentedHardware, which
+ * Hal only puts in front of the backend while stats are enabled.
+ *
+ * Histograms are log-linear like HdrHistogram: every power of two is split
+ * into SUB_BUCKETS buckets, so any latency from 1 ns up is kept to within 25%
+ * in a fixed array. All storage is allocated up front; recording allocates
+ * nothing and is safe from any thread.
+ */
+public class LatencyStats {
+    // Hardware calls, timed by InstrumentedHardware
+    static final int OP_LED_TRIGGERS = 0;
+    static final int OP_LED_READ = 1;
+    static final int OP_LED_WRITE = 2;
+    static final int OP_GPIO_READ = 3;
+    static final int OP_GPIO_WRITE = 4;
+    static final int OP_HWMON_READ = 5;
+    static final int OP_PWM_READ = 6;
+    static final int OP_PWM_WRITE = 7;
+    // Direct sysfs paths
+    static final int OP_SYSFS_READ = 8;
+    static final int OP_GPIO_BATCH = 9;
+    static final int OP_PWM_RECONFIGURE = 10;
+    static final int OP_GETPROP = 11;
+    // UI binding
+    static final int OP_BIND_CHILD = 12;
+    static final int OP_UPDATE_LED = 13;
+    static final int OP_UPDATE_GPIO = 14;
+    static final int OP_UPDATE_HWMON = 15;
+    static final int OP_UPDATE_PWM = 16;
+    static final int OP_THUMB_RENDER = 17;
+    // Command socket
+    static final int OP_COMMAND_BATCH = 18;
+    // Alarm rules of one sensor, checked on every read
+    static final int OP_ALARM_EVAL = 19;
+
+    private static final String[] NAMES = {
+            "led.triggers", "led.read", "led.write", "gpio.read", "gpio.write",
+            "hwmon.read", "pwm.read", "pwm.write", "sysfs.read", "gpio.batch",
+            "pwm.reconfigure", "getprop", "bind.child", "update.led", "update.gpio",
+            "update.hwmon", "update.pwm", "thumb.render", "command.batch",
+            "alarm.eval"
+    };
+    private static final int OPS = NAMES.length;
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private static final AtomicLongArray buckets = new AtomicLongArray(OPS * BUCKETS);
+    private static final AtomicLongArray counts = new AtomicLongArray(OPS);
+    private static final AtomicLongArray totals = new AtomicLongArray(OPS);
+    private static final AtomicLongArray maxima = new AtomicLongArray(OPS);
+
+    private static volatile boolean enabled;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        Hal.setInstrumented(enable);
+    }
+
+    // Returns the start time of an operation, or 0 while disabled
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Records the time since a start() that happened while enabled
+    public static void record(int op, long start) {
+        if (start != 0)
+            recordNanos(op, System.nanoTime() - start);
+    }
+
+    // Records an operation timed by the caller
+    public static void recordNanos(int op, long nanos) {
+        if (!enabled)
+            return;
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(op * BUCKETS + bucketOf(nanos));
+        counts.incrementAndGet(op);
+        totals.addAndGet(op, nanos);
+        long max = maxima.get(op);
+        while (nanos > max && !maxima.compareAndSet(op, max, nanos))
+            max = maxima.get(op);
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that, each power of two
+    // gets SUB_BUCKETS buckets picked by the bits right after the highest one
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Smallest value that falls into a bucket
+    static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int msb = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (msb - SUB_BITS);
+    }
+
+    public static void reset() {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0);
+        for (int op = 0; op < OPS; op++) {
+            counts.set(op, 0);
+            totals.set(op, 0);
+            maxima.set(op, 0);
+        }
+    }
+
+    // Upper bound of the bucket holding the given fraction of an op's samples
+    private static long percentile(int op, long count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(op * BUCKETS + b);
+            if (seen >= target)
+                return b + 1 < BUCKETS ? lowestOf(b + 1) - 1 : Long.MAX_VALUE;
+        }
+        return maxima.get(op);
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    // One line per operation that has samples, latencies in microseconds
+    public static void dump(String prefix, PrintWriter pw) {
+        pw.println(prefix + "Latency (us)" + (enabled ? "" : ", disabled") + ":");
+        for (int op = 0; op < OPS; op++) {
+            long count = counts.get(op);
+            if (count == 0)
+                continue;
+            long max = maxima.get(op);
+            pw.println(prefix + "  " + NAMES[op] + ": count=" + count
+                    + " mean=" + micros(totals.get(op) / count)
+                    + " p50=" + micros(Math.min(percentile(op, count, 0.5), max))
+                    + " p90=" + micros(Math.min(percentile(op, count, 0.9), max))
+                    + " p99=" + micros(Math.min(percentile(op, count, 0.99), max))
+                    + " max=" + micros(max));
+        }
+    }
+}
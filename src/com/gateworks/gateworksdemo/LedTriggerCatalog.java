@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Trigger lists and current triggers of the LEDs, loaded once per process.
+ *
+ * A LED's triggers are read the first time it is asked for and never again,
+ * since the available triggers only change with the kernel. LEDs offering
+ * the same triggers share one interned String[], so callers can key per
+ * trigger set caches (e.g. spinner adapters) on the array itself. The
+ * current trigger is remembered here too and updated by select(), so a
+ * rebind needs no trigger I/O.
+ */
+public class LedTriggerCatalog {
+    private static LedTriggerCatalog instance;
+
+    public static class Entry {
+        public final String[] triggers; // shared, do not modify
+        volatile int selected; // index into triggers
+
+        Entry(String[] triggers, int selected) {
+            this.triggers = triggers;
+            this.selected = selected;
+        }
+
+        public int getSelected() {
+            return selected;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private final HashMap<List<String>, String[]> triggerSets = new HashMap<List<String>, String[]>();
+
+    public static synchronized LedTriggerCatalog get() {
+        if (instance == null)
+            instance = new LedTriggerCatalog();
+        return instance;
+    }
+
+    // Returns the LED's triggers and current selection, reading them on first use
+    public synchronized Entry entry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            Hardware hw = Hal.get();
+            String[] triggers = intern(hw.getAllLedTriggers(name));
+            int selected = Arrays.asList(triggers).indexOf(hw.getLedTrigger(name));
+            entry = new Entry(triggers, Math.max(selected, 0));
+            entries.put(name, entry);
+        }
+        return entry;
+    }
+
+    private String[] intern(List<String> list) {
+        String[] triggers = triggerSets.get(list);
+        if (triggers == null) {
+            triggers = new String[list.size()];
+            for (int i = 0; i < triggers.length; i++)
+                triggers[i] = list.get(i).intern();
+            triggerSets.put(Arrays.asList(triggers), triggers);
+        }
+        return triggers;
+    }
+
+    // Records a trigger that was just written to the LED
+    public void select(String name, int position) {
+        entry(name).selected = position;
+    }
+
+    // Forgets everything, e.g. after LEDs were added or removed
+    public synchronized void invalidate() {
+        entries.clear();
+        triggerSets.clear();
+    }
+}
@@ -16,156 +16,577 @@
 
 package com.gateworks.gateworksdemo;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import android.app.Activity;
-import android.os.AsyncTask;
+import android.app.AlertDialog;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
-import android.view.View;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.ExpandableListView;
 
 public class MainActivity extends Activity {
+    private static final String TAG = "MainActivity";
+
+    // Upper bound on duty cycle writes per second per PWM channel while dragging,
+    // unless PWM_RATE_PROPERTY sets another one
+    static final int PWM_MAX_WRITE_RATE = 30;
+    static final String PWM_RATE_PROPERTY = "persist.gw.pwm.rate";
+    // Set to 1 to record latency stats from startup
+    static final String STATS_PROPERTY = "persist.gw.stats";
 
     ExpandableListAdapter listAdapter;
     ExpandableListView expListView;
-    List<String> listDataHeader;
-    volatile boolean abort = false;
-    static volatile ArrayList<String> pausedThreads = new ArrayList<String>();
-    HashMap<String, List<String>> listDataChild;
+    DeviceTable devices; // shared with the adapter, replaced when devices come or go
+    GpioEdgeWatcher gpioWatcher;
+    private int gpioGeneration; // bumped on every watcher restart, to drop stale events
+    HotplugWatcher hotplugWatcher;
+    PollPolicy gpioPolicy;
+    private volatile int[] gpioChannels; // SampleLog channel of every pin
+    GpioBatch gpioBatch;
+    CategoryState categoryState = new CategoryState();
+    PollScheduler scheduler = new PollScheduler(categoryState);
+    SysfsAttributeCache attributeCache = new SysfsAttributeCache(64);
+    PwmWriter pwmWriter = new PwmWriter(PWM_MAX_WRITE_RATE);
+    SamplingService samplingService;
+    private SensorSnapshot lastHwmon;
 
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        categoryState.addListener(attributeCache);
+        if (PropertyIndex.get().getValue(STATS_PROPERTY, "0").equals("1"))
+            LatencyStats.setEnabled(true);
+        pwmWriter.setMaxRate(pwmWriteRate());
+        if (SampleLog.isEnabled())
+            SampleLog.start(this);
+
         // get the listview
         expListView = (ExpandableListView) findViewById(R.id.lvExp);
 
-        // preparing list data
-        prepareListData();
+        // preparing list data from the backend's (on a board, cached getprop) device list
+        devices = DeviceTable.scan(Hal.get().listDevices(false));
 
-        listAdapter = new ExpandableListAdapter(this, listDataHeader, listDataChild);
+        listAdapter = new ExpandableListAdapter(this, devices);
 
         // setting list adapter
         expListView.setAdapter(listAdapter);
+        expListView.setRecyclerListener(listAdapter);
+        expListView.setOnScrollListener(listAdapter);
+
+        // If gpios are available, watch the inputs for edges instead of polling them
+        if (devices.indexOf(Device.Kind.GPIO) >= 0)
+            startGpioWatcher();
 
-        // If gpios are available, execute polling update thread
-        if (listDataChild.containsKey("GPIO"))
-            new MonitorTimer("GPIO", 500).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        // Hwmons are sampled by a service that keeps running, and recording history,
+        // after the activity is gone
+        if (devices.indexOf(Device.Kind.HWMON) >= 0)
+            startService(new Intent(this, SamplingService.class));
+        categoryState.addListener(new CategoryState.Listener() {
+            public void onCategoryPaused(int groupType) {
+            }
+
+            public void onCategoryResumed(int groupType) {
+                if (groupType == Device.GROUP_HWMON)
+                    showLatestHwmon();
+            }
+        });
+
+        // Devices that come or go later are merged into the list as they appear
+        hotplugWatcher = new HotplugWatcher(devices, new HotplugWatcher.Listener() {
+            public void onDevicesChanged(final DeviceTable devices) {
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        applyDevices(devices);
+                    }
+                });
+            }
+        });
+        hotplugWatcher.start();
+
+        // Scripts driving the hardware through the command socket show up in the list
+        if (CommandService.isEnabled()) {
+            startService(new Intent(this, CommandService.class));
+            CommandServer.get().addListener(commandListener);
+        }
+    }
 
-        // If hwmons are available, execute polling update thread
-        if (listDataChild.containsKey("HWMON"))
-            new MonitorTimer("HWMON", 1000).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    protected void onStart() {
+        super.onStart();
+        if (devices.indexOf(Device.Kind.HWMON) >= 0)
+            bindService(new Intent(this, SamplingService.class), samplingConnection,
+                    BIND_AUTO_CREATE);
+    }
+
+    protected void onStop() {
+        // Release held sysfs handles; the next sample reopens what it needs
+        attributeCache.evictAll();
+
+        if (samplingService != null) {
+            samplingService.removeListener(hwmonListener);
+            samplingService = null;
+            unbindService(samplingConnection);
+        }
+        super.onStop();
     }
 
     public void onDestroy() {
-        abort = true;
+        hotplugWatcher.stop();
+        CommandServer.get().removeListener(commandListener);
+        scheduler.shutdown();
+        pwmWriter.shutdown();
+        if (gpioWatcher != null)
+            gpioWatcher.stop();
+        if (gpioBatch != null)
+            gpioBatch.close();
         super.onDestroy();
     }
 
-    private void prepareListData() {
-        listDataHeader = new ArrayList<String>();
-        listDataChild = new HashMap<String, List<String>>();
-        String[] categories = new String[]{"LED", "GPIO", "HWMON", "PWM"};
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
 
-        // Adding category headers
-        listDataHeader.addAll(Arrays.asList(categories));
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_stats).setChecked(LatencyStats.isEnabled());
+        menu.findItem(R.id.action_record).setChecked(SampleLog.current() != null);
+        return true;
+    }
 
-        // Adding child data
-        int i = 0;
-        for (String category: categories)
-            listDataChild.put(listDataHeader.get(i++), propReader(category.toLowerCase()+"."));
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_diagnostics:
+                StringWriter text = new StringWriter();
+                dumpDiagnostics("", new PrintWriter(text));
+                new AlertDialog.Builder(this)
+                        .setTitle(R.string.diagnostics)
+                        .setMessage(text.toString())
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+                return true;
+            case R.id.action_stats:
+                LatencyStats.setEnabled(!item.isChecked());
+                return true;
+            case R.id.action_stats_reset:
+                LatencyStats.reset();
+                return true;
+            case R.id.action_record:
+                if (item.isChecked())
+                    SampleLog.stop();
+                else
+                    SampleLog.start(this);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
 
-        clearEmptyHeaders();
+    // PWM_MAX_WRITE_RATE unless the property holds a valid rate
+    private static int pwmWriteRate() {
+        String value = PropertyIndex.get().getValue(PWM_RATE_PROPERTY, null);
+        try {
+            return value == null ? PWM_MAX_WRITE_RATE : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring " + PWM_RATE_PROPERTY + "=" + value);
+            return PWM_MAX_WRITE_RATE;
+        }
     }
 
-    // Remove all headers that do not contain any children
-    private void clearEmptyHeaders() {
-        ArrayList<String> emptyList = new ArrayList<String>();
-        for(Map.Entry<String, List<String>> entry: listDataChild.entrySet())
-            if(entry.getValue().isEmpty())
-                emptyList.add(entry.getKey());
+    // "adb shell dumpsys activity com.gateworks.gateworksdemo" prints the same
+    // diagnostics as the menu
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        dumpDiagnostics(prefix, writer);
+    }
+
+    private void dumpDiagnostics(String prefix, PrintWriter writer) {
+        LatencyStats.dump(prefix, writer);
+
+        writer.println(prefix + "Rows: inflated=" + listAdapter.getInflateCount()
+                + " rebound=" + listAdapter.getRebindCount()
+                + " redrawn=" + listAdapter.getRedrawCount()
+                + " tick redrawn=" + listAdapter.getTickRedrawCount()
+                + " avoided writes=" + listAdapter.getAvoidedWriteCount());
+        writer.println(prefix + "PWM: writes=" + pwmWriter.getWriteCount()
+                + " coalesced=" + pwmWriter.getCoalescedCount()
+                + " reconfigured=" + pwmWriter.getReconfigureCount()
+                + " max reconfigure=" + pwmWriter.getMaxReconfigureLatency() / 1000 + " us");
+        CommandServer.get().dump(prefix, writer);
+        SampleLog log = SampleLog.current();
+        if (log != null)
+            log.dump(prefix, writer);
 
-        for(String item : emptyList) {
-            listDataChild.remove(item);
-            listDataHeader.remove(item);
+        writer.println(prefix + "Polling:");
+        if (gpioPolicy != null)
+            gpioPolicy.dump(prefix + "  ", writer);
+        if (samplingService != null) {
+            samplingService.getPollPolicy().dump(prefix + "  ", writer);
+            samplingService.getAlarms().dump(prefix, writer);
         }
+        writer.flush();
     }
 
-    // Constructs list children via getprop call
-    private ArrayList<String> propReader(String typePrefix) {
-        Process proc = null;
-        try {
-            proc = Runtime.getRuntime().exec("/system/bin/getprop");
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Called by the adapter after a gpio changes direction so inputs are re-armed
+    // and the pin's value is read back
+    void onGpioDirectionChanged(int pin) {
+        if (gpioWatcher != null)
+            gpioWatcher.rearm();
+        sampleGpios(pin);
+    }
+
+    private void startGpioWatcher() {
+        final ArrayList<ExpandableListAdapter.ViewHolder> holders =
+                listAdapter.holders.get(devices.indexOf(Device.Kind.GPIO));
+        final int generation = ++gpioGeneration;
+
+        Device[] gpios = devices.get(Device.Kind.GPIO);
+        String[] pinDirs = new String[gpios.length];
+        String[] names = new String[gpios.length];
+        String[] valuePaths = new String[gpios.length];
+        int[] pins = new int[gpios.length];
+        for (int i = 0; i < gpios.length; i++) {
+            pinDirs[i] = Hal.get().getGpioDir(gpios[i].name);
+            names[i] = gpios[i].name;
+            valuePaths[i] = gpios[i].path;
+            pins[i] = i;
         }
+        final int[] channels = new int[gpios.length];
+        for (int i = 0; i < gpios.length; i++)
+            channels[i] = SampleLog.channel("gpio." + names[i]);
+        gpioChannels = channels;
+        gpioBatch = new GpioBatch(names, valuePaths);
 
-        BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+        // Initial values and directions are read off the UI thread
+        sampleGpios(pins);
 
-        ArrayList<String> propsFound = new ArrayList<String>();
-        String line;
-        try {
-            // Read each line of getprop output
-            while ((line = br.readLine()) != null) {
-                // Add to the list if matching prefix is found
-                if (line.contains(typePrefix))
-                    propsFound.add(line);
+        gpioPolicy = new PollPolicy("gpio", names, GpioEdgeWatcher.MIN_POLL_INTERVAL,
+                GpioEdgeWatcher.MAX_POLL_INTERVAL, GpioEdgeWatcher.BACKGROUND_POLL_INTERVAL);
+        for (int i = 0; i < pins.length; i++)
+            gpioPolicy.setBackground(i, !holders.get(i).published);
+        gpioWatcher = new GpioEdgeWatcher(names, pinDirs, gpioPolicy, new GpioEdgeWatcher.Listener() {
+            public void onGpioChanged(final int pin, final int value) {
+                // Edges are recorded even while the group is collapsed
+                SampleLog log = SampleLog.current();
+                if (log != null)
+                    log.record(channels[pin], SystemClock.elapsedRealtime(), value);
+                if (categoryState.isPaused(Device.GROUP_GPIO))
+                    return;
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        // Pin numbers of a watcher that was replaced no longer match the list
+                        if (generation != gpioGeneration)
+                            return;
+                        listAdapter.beginTick();
+                        // Only push the changed pin, and only bind it if its view is showing
+                        ExpandableListAdapter.ViewHolder view = holders.get(pin);
+                        view.value = value;
+                        if (isShowing(view))
+                            listAdapter.updateGPIO(view);
+                    }
+                });
+            }
+        });
+        gpioWatcher.start();
+    }
+
+    // Switches the list to a new device list. Devices that stayed keep their holders,
+    // rows and state; the pollers of a kind whose devices changed start over.
+    private void applyDevices(DeviceTable table) {
+        boolean gpioChanged = !devices.sameDevices(table, Device.Kind.GPIO);
+        boolean hwmonChanged = !devices.sameDevices(table, Device.Kind.HWMON);
+        for (Device.Kind kind : Device.Kind.values())
+            if (!devices.sameDevices(table, kind))
+                Log.i(TAG, kind.header + ": " + devices.get(kind).length + " -> " +
+                        table.get(kind).length + " devices");
+        // Trigger lists are cached per LED name, and a new LED may reuse an old name
+        if (!devices.sameDevices(table, Device.Kind.LED))
+            LedTriggerCatalog.get().invalidate();
+        devices = table;
+        listAdapter.setDevices(table);
+        CommandServer.get().setDevices(table);
+
+        if (gpioChanged)
+            restartGpioWatcher();
+        if (hwmonChanged) {
+            if (samplingService != null) {
+                samplingService.reload(table.get(Device.Kind.HWMON));
+                linkHwmon();
+            } else if (table.indexOf(Device.Kind.HWMON) >= 0) {
+                // The first hwmon just appeared
+                startService(new Intent(this, SamplingService.class));
+                bindService(new Intent(this, SamplingService.class), samplingConnection,
+                        BIND_AUTO_CREATE);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return propsFound;
-    }
-
-    // Thread to update sysfs values at a set interval
-    private class MonitorTimer extends AsyncTask<Integer, Integer, Integer> {
-        ArrayList<ExpandableListAdapter.ViewHolder> holders;
-        String category;
-        int sleepTime, groupNumber;
-
-        public MonitorTimer (String category, int sleepTime) {
-            this.category = category;
-            this.sleepTime = sleepTime;
-            this.groupNumber = listDataHeader.indexOf(category);
-            this.holders = listAdapter.holders.get(this.groupNumber);
-        }
-
-        protected Integer doInBackground(Integer... thing) {
-            while(!abort)
-                try {
-                    // Sleep to avoid spinning...
-                    Thread.sleep(sleepTime);
-                    if (!pausedThreads.contains(category))
-                        runOnUiThread(new Runnable() {
-                            public void run() {
-                                // update values
-                                for (ExpandableListAdapter.ViewHolder view : holders) {
-                                    // Check if view exists, is correct type, and is visible
-                                    if (view.view != null && view.groupPosition == groupNumber &&
-                                            view.view.getVisibility() == View.VISIBLE) {
-                                        if (category.equals("GPIO")) {
-                                            listAdapter.updateGPIO(view);
-                                        }
-                                        else {
-                                            listAdapter.updateHWMON(view);
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        }
+    }
+
+    // Pin indexes changed, so the watcher, batch and policy start over on the new list
+    private void restartGpioWatcher() {
+        if (gpioWatcher != null)
+            gpioWatcher.stop();
+        if (gpioBatch != null)
+            gpioBatch.close();
+        gpioWatcher = null;
+        gpioBatch = null;
+        gpioPolicy = null;
+        gpioGeneration++;
+        attributeCache.evictGroup(Device.GROUP_GPIO);
+        if (devices.indexOf(Device.Kind.GPIO) >= 0)
+            startGpioWatcher();
+    }
+
+    // True if a holder is currently bound to a visible row
+    private static boolean isShowing(ExpandableListAdapter.ViewHolder view) {
+        return view.attached;
+    }
+
+    // Called by the adapter once a child's row has settled in or out of view.
+    // Off screen children are only sampled at their poller's background rate.
+    void onChildVisibilityChanged(int groupType, int childPosition, boolean visible) {
+        switch (groupType) {
+            case Device.GROUP_GPIO:
+                if (gpioPolicy == null || childPosition >= gpioPolicy.size())
+                    break;
+                gpioPolicy.setBackground(childPosition, !visible);
+                if (visible)
+                    gpioWatcher.reschedule();
+                break;
+            case Device.GROUP_HWMON:
+                if (samplingService != null)
+                    samplingService.setSensorVisible(childPosition, visible);
+                break;
+        }
+    }
+
+    // Hands the hwmon readings that changed since the last applied snapshot to the UI.
+    // Visible rows are rebound on every pass so their trend lines pick up the new sample;
+    // updateHWMON skips whatever did not actually change.
+    private synchronized void applyHwmon(final SensorSnapshot snapshot) {
+        final int[] changed = snapshot.changedSince(lastHwmon);
+        lastHwmon = snapshot;
+
+        runOnUiThread(new Runnable() {
+            public void run() {
+                int groupNumber = devices.indexOf(Device.Kind.HWMON);
+                if (groupNumber < 0)
+                    return;
+                ArrayList<ExpandableListAdapter.ViewHolder> holders =
+                        listAdapter.holders.get(groupNumber);
+                // A pass taken before a hotplug reload does not line up with the rows
+                if (snapshot.size() != holders.size())
+                    return;
+                listAdapter.beginTick();
+                for (int i : changed)
+                    holders.get(i).value = snapshot.get(i);
+                for (ExpandableListAdapter.ViewHolder view : holders)
+                    if (isShowing(view))
+                        listAdapter.updateHWMON(view);
+            }
+        });
+    }
+
+    // Readings arrive from the sampling service; they are only bound while the group is shown
+    private final SamplingService.Listener hwmonListener = new SamplingService.Listener() {
+        public void onHwmonSampled(SensorSnapshot snapshot) {
+            if (!categoryState.isPaused(Device.GROUP_HWMON))
+                applyHwmon(snapshot);
+        }
+    };
+
+    private final ServiceConnection samplingConnection = new ServiceConnection() {
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            samplingService = ((SamplingService.LocalBinder) binder).getService();
+            samplingService.addListener(hwmonListener);
+            linkHwmon();
+            showLatestHwmon();
+        }
+
+        public void onServiceDisconnected(ComponentName name) {
+            samplingService = null;
+        }
+    };
+
+    // Hwmon rows draw their trend straight from the service's history
+    private void linkHwmon() {
+        int groupNumber = devices.indexOf(Device.Kind.HWMON);
+        if (groupNumber < 0)
+            return;
+        ArrayList<ExpandableListAdapter.ViewHolder> holders = listAdapter.holders.get(groupNumber);
+
+        // The service may have missed a hotplug while nothing was bound to it
+        boolean match = holders.size() == samplingService.getSensorCount();
+        for (int i = 0; match && i < holders.size(); i++)
+            match = holders.get(i).device.name.equals(samplingService.getSensorName(i));
+        if (!match)
+            samplingService.reload(devices.get(Device.Kind.HWMON));
+
+        lastHwmon = null;
+        for (int i = 0; i < holders.size(); i++) {
+            holders.get(i).history = samplingService.getHistory(i);
+            samplingService.setSensorVisible(i, holders.get(i).published);
+        }
+    }
+
+    // Binds the service's newest readings without waiting for its next pass
+    private void showLatestHwmon() {
+        SamplingService service = samplingService;
+        if (service == null || devices.indexOf(Device.Kind.HWMON) < 0)
+            return;
+        SensorSnapshot latest = service.getLatest();
+        if (latest != null)
+            applyHwmon(latest);
+    }
+
+    // Position of a device within its group, or -1 if the list does not show it
+    private int childPosition(Device device) {
+        int groupNumber = devices.indexOf(device.kind);
+        if (groupNumber < 0)
+            return -1;
+        return Arrays.asList(devices.getGroup(groupNumber)).indexOf(device);
+    }
+
+    // Pulls what a command batch wrote into the holders, the same way a widget change would
+    private final CommandServer.Listener commandListener = new CommandServer.Listener() {
+        public void onDevicesWritten(final Device[] written) {
+            runOnUiThread(new Runnable() {
+                public void run() {
+                    int[] pins = new int[written.length];
+                    int count = 0;
+                    for (Device device : written) {
+                        int child = childPosition(device);
+                        if (child < 0)
+                            continue;
+                        if (device.kind == Device.Kind.GPIO) {
+                            pins[count++] = child;
+                            continue;
+                        }
+                        listAdapter.refresh(listAdapter.holders
+                                .get(devices.indexOf(device.kind)).get(child));
+                    }
+                    if (count == 0)
+                        return;
+                    // Directions may have changed too, so inputs are re-armed
+                    if (gpioWatcher != null)
+                        gpioWatcher.rearm();
+                    sampleGpios(Arrays.copyOf(pins, count));
                 }
-            return 0;
+            });
         }
+    };
+
+    // Drives every output gpio to the same value in one batch
+    void setAllGpios(int value) {
+        ArrayList<ExpandableListAdapter.ViewHolder> holders =
+                listAdapter.holders.get(devices.indexOf(Device.Kind.GPIO));
+
+        // Outputs already at the value are left alone
+        int count = 0;
+        int[] outputs = new int[holders.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            if (holders.get(i).input)
+                continue;
+            if (holders.get(i).value == value)
+                listAdapter.countAvoidedWrite();
+            else
+                outputs[count++] = i;
+        }
+
+        gpioBatch.setAll(Arrays.copyOf(outputs, count), value, gpioBatchDone);
     }
-}
 
+    // Reads every gpio in one batch
+    void readAllGpios() {
+        int[] pins = new int[listAdapter.holders.get(devices.indexOf(Device.Kind.GPIO)).size()];
+        for (int i = 0; i < pins.length; i++)
+            pins[i] = i;
+        gpioBatch.read(pins, gpioBatchDone);
+    }
+
+    // Applies the values of a finished gpio batch to the list
+    private final GpioBatch.Callback gpioBatchDone = new GpioBatch.Callback() {
+        public void onComplete(final int[] pins, final int[] values, long elapsedNanos) {
+            Log.d(TAG, "GPIO batch of " + pins.length + " pins took " + elapsedNanos / 1000 + " us");
+            recordGpios(pins, values);
+            runOnUiThread(new Runnable() {
+                public void run() {
+                    int groupNumber = devices.indexOf(Device.Kind.GPIO);
+                    if (groupNumber < 0)
+                        return;
+                    ArrayList<ExpandableListAdapter.ViewHolder> holders =
+                            listAdapter.holders.get(groupNumber);
+                    listAdapter.beginTick();
+                    for (int i = 0; i < pins.length && pins[i] < holders.size(); i++) {
+                        ExpandableListAdapter.ViewHolder view = holders.get(pins[i]);
+                        view.value = values[i];
+                        if (isShowing(view))
+                            listAdapter.updateGPIO(view);
+                    }
+                }
+            });
+        }
+    };
+
+    // Appends gpio reads to the sample log, if one is recording
+    private void recordGpios(int[] pins, int[] values) {
+        SampleLog log = SampleLog.current();
+        int[] channels = gpioChannels;
+        if (log == null || channels == null)
+            return;
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < pins.length; i++)
+            if (pins[i] < channels.length)
+                log.record(channels[pins[i]], now, values[i]);
+    }
+
+    // Reads value and direction of the given gpios on the worker, then binds them
+    void sampleGpios(final int... pins) {
+        final ArrayList<ExpandableListAdapter.ViewHolder> holders =
+                listAdapter.holders.get(devices.indexOf(Device.Kind.GPIO));
+        final int generation = gpioGeneration;
+        final String[] names = new String[pins.length];
+        final String[] paths = new String[pins.length];
+        for (int i = 0; i < pins.length; i++) {
+            names[i] = holders.get(pins[i]).device.name;
+            paths[i] = holders.get(pins[i]).device.path;
+        }
+
+        scheduler.post(new Runnable() {
+            public void run() {
+                final int[] values = new int[names.length];
+                final boolean[] inputs = new boolean[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    values[i] = paths[i] == null ? SysfsAttributeCache.UNAVAILABLE :
+                            attributeCache.readInt(paths[i], Device.GROUP_GPIO);
+                    if (values[i] == SysfsAttributeCache.UNAVAILABLE)
+                        values[i] = Hal.get().getGpioValue(names[i]);
+                    inputs[i] = Hal.get().isGpioInput(names[i]);
+                }
+                recordGpios(pins, values);
+
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        if (generation != gpioGeneration)
+                            return;
+                        for (int i = 0; i < pins.length; i++) {
+                            ExpandableListAdapter.ViewHolder view = holders.get(pins[i]);
+                            view.value = values[i];
+                            view.input = inputs[i];
+                            if (isShowing(view))
+                                listAdapter.updateGPIO(view);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Per sensor polling intervals that adapt to how often a value changes.
+ *
+ * Every sensor starts at its minimum interval. Each read that returns the
+ * same value doubles the interval, up to the maximum; a changed value drops
+ * it straight back to the minimum. The maximum is the freshness target: a
+ * stable sensor is never read less often than that.
+ *
+ * The bounds default per group and can be overridden per sensor with the
+ * persist.gw.poll.<group>.<sensor> property, given as "min:max" or just
+ * "max" in ms. The achieved read rate of every sensor is tracked over
+ * RATE_WINDOW so the effect of the policy can be checked at runtime.
+ *
+ * Sensors whose rows are off screen can be put in the background. Their
+ * reads are skipped, except for one every background interval
+ * (persist.gw.poll.<group>.background, 0 to skip them all), and every
+ * skipped read is counted. Bringing a sensor back to the foreground makes
+ * it due at once.
+ *
+ * A policy is owned by the thread that polls with it: everything except
+ * setBackground(), isBackground() and the dump must be called on that thread.
+ * Background changes made from other threads are only requested, and the
+ * owner applies them the next time it asks whether a sensor is due.
+ */
+public class PollPolicy {
+    static final String PROPERTY_PREFIX = "persist.gw.poll.";
+    static final int RATE_WINDOW = 10000; // ms
+
+    private final String group;
+    private final String[] names;
+    private final int[] minInterval;
+    private final int[] maxInterval;
+    private final int[] interval;
+    private final long[] nextDue;
+    private final long[] lastRead;
+    private final boolean[] background; // as applied by the owner thread
+    private final AtomicIntegerArray requested; // background as last set, 1 or 0
+    private final int backgroundInterval;
+    private volatile long skippedReads; // written by the owner thread only
+
+    // Read rate bookkeeping
+    private final int[] windowReads;
+    private final long[] windowStart;
+    private final float[] rate; // reads per second over the last full window
+
+    public PollPolicy(String group, String[] names, int defMin, int defMax, int defBackground) {
+        this.group = group;
+        this.names = names;
+        int count = names.length;
+        minInterval = new int[count];
+        maxInterval = new int[count];
+        interval = new int[count];
+        nextDue = new long[count];
+        lastRead = new long[count];
+        background = new boolean[count];
+        requested = new AtomicIntegerArray(count);
+        windowReads = new int[count];
+        windowStart = new long[count];
+        rate = new float[count];
+
+        PropertyIndex props = PropertyIndex.get();
+        for (int i = 0; i < count; i++) {
+            minInterval[i] = defMin;
+            maxInterval[i] = defMax;
+            parseBounds(i, props.getValue(PROPERTY_PREFIX + group + "." + names[i], null));
+            interval[i] = minInterval[i];
+        }
+        backgroundInterval = parseInterval(
+                props.getValue(PROPERTY_PREFIX + group + ".background", null), defBackground);
+    }
+
+    private static int parseInterval(String spec, int def) {
+        if (spec == null)
+            return def;
+        try {
+            return Math.max(0, Integer.parseInt(spec.trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    // Accepts "min:max" or "max"; anything unparsable keeps the defaults
+    private void parseBounds(int i, String spec) {
+        if (spec == null)
+            return;
+        try {
+            int colon = spec.indexOf(':');
+            int min = colon < 0 ? minInterval[i] : Integer.parseInt(spec.substring(0, colon).trim());
+            int max = Integer.parseInt(spec.substring(colon + 1).trim());
+            if (min <= 0 || max <= 0)
+                return;
+            minInterval[i] = Math.min(min, max);
+            maxInterval[i] = max;
+        } catch (NumberFormatException e) {
+            // Keep the group defaults
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    // Shortest interval any sensor may be read at, i.e. the tick a poller needs
+    public int getMinInterval() {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < names.length; i++)
+            min = Math.min(min, minInterval[i]);
+        return min;
+    }
+
+    // Starts a sensor over at its minimum interval and makes it due at once
+    public void reset(int sensor) {
+        interval[sensor] = minInterval[sensor];
+        nextDue[sensor] = 0;
+    }
+
+    // Moves a sensor in or out of the background; coming back makes it due at once.
+    // May be called from any thread; the owner picks the change up on its next check.
+    public void setBackground(int sensor, boolean inBackground) {
+        requested.set(sensor, inBackground ? 1 : 0);
+    }
+
+    public boolean isBackground(int sensor) {
+        return requested.get(sensor) != 0;
+    }
+
+    // Applies a pending background change on the owner thread
+    private void applyBackground(int sensor) {
+        boolean inBackground = requested.get(sensor) != 0;
+        if (background[sensor] == inBackground)
+            return;
+        background[sensor] = inBackground;
+        if (!inBackground)
+            reset(sensor);
+    }
+
+    // A background sensor that is due is only read once per background interval;
+    // otherwise the read is counted as skipped and the next one is scheduled as if
+    // it had happened
+    public boolean isDue(int sensor, long now) {
+        applyBackground(sensor);
+        if (now < nextDue[sensor])
+            return false;
+        if (!background[sensor] || (backgroundInterval > 0 &&
+                now >= lastRead[sensor] + backgroundInterval))
+            return true;
+        skippedReads++;
+        nextDue[sensor] = now + interval[sensor];
+        return false;
+    }
+
+    // Reads avoided because their sensor was in the background
+    public long getSkippedReads() {
+        return skippedReads;
+    }
+
+    public long getNextDue(int sensor) {
+        applyBackground(sensor);
+        return nextDue[sensor];
+    }
+
+    public int getInterval(int sensor) {
+        return interval[sensor];
+    }
+
+    // Reads per second achieved over the last RATE_WINDOW
+    public float getSampleRate(int sensor) {
+        return rate[sensor];
+    }
+
+    // Records a read and schedules the next one
+    public void onSample(int sensor, long now, boolean changed) {
+        if (changed)
+            interval[sensor] = minInterval[sensor];
+        else
+            interval[sensor] = Math.min(interval[sensor] * 2, maxInterval[sensor]);
+        nextDue[sensor] = now + interval[sensor];
+        lastRead[sensor] = now;
+
+        // The read that closes a window also opens the next one
+        if (windowReads[sensor] == 0)
+            windowStart[sensor] = now;
+        windowReads[sensor]++;
+        long elapsed = now - windowStart[sensor];
+        if (elapsed >= RATE_WINDOW) {
+            rate[sensor] = (windowReads[sensor] - 1) * 1000f / elapsed;
+            windowReads[sensor] = 1;
+            windowStart[sensor] = now;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        for (int i = 0; i < names.length; i++)
+            pw.println(prefix + group + "." + names[i] + ": interval=" + interval[i] + "ms ("
+                    + minInterval[i] + ".." + maxInterval[i] + ") rate=" + rate[i] + "/s"
+                    + (isBackground(i) ? " background" : ""));
+        pw.println(prefix + group + " skipped reads: " + skippedReads);
+    }
+}
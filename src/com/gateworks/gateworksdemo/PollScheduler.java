@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Runs every periodic hardware poll on one shared worker thread.
+ *
+ * Categories register a job with their own interval. On each wakeup the worker
+ * runs every job that is due, plus any job due within COALESCE_WINDOW ms, so
+ * jobs with related intervals share a single wakeup instead of each sleeping
+ * on a thread of its own. Jobs of a paused category are skipped; when every
+ * job is paused the worker parks until CategoryState reports a resume.
+ */
+public class PollScheduler implements Runnable, CategoryState.Listener {
+    private static final String TAG = "PollScheduler";
+
+    // Jobs due this close to the current wakeup run with it (ms)
+    static final int COALESCE_WINDOW = 20;
+
+    public static class Job {
+        final int groupType;
+        final int interval;
+        final Runnable task;
+        volatile long nextRun;
+
+        Job(int groupType, int interval, Runnable task) {
+            this.groupType = groupType;
+            this.interval = interval;
+            this.task = task;
+        }
+    }
+
+    private final CategoryState state;
+    private final CopyOnWriteArrayList<Job> jobs = new CopyOnWriteArrayList<Job>();
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean shutdown = false;
+    private volatile Runnable lastTask; // run by the worker once it has stopped
+    private volatile Thread worker;
+
+    public PollScheduler(CategoryState state) {
+        this.state = state;
+        state.addListener(this);
+    }
+
+    // Registers a periodic job for a group type; the first run happens right away
+    public synchronized Job addJob(int groupType, int interval, Runnable task) {
+        Job job = new Job(groupType, interval, task);
+        job.nextRun = now();
+        jobs.add(job);
+        startWorker();
+        return job;
+    }
+
+    // Runs a one-off task on the worker ahead of any due jobs
+    public synchronized void post(Runnable task) {
+        tasks.add(task);
+        startWorker();
+    }
+
+    private void startWorker() {
+        if (worker == null && !shutdown) {
+            worker = new Thread(this, TAG);
+            worker.start();
+        }
+        LockSupport.unpark(worker);
+    }
+
+    public void onCategoryPaused(int groupType) {
+        // Paused jobs are skipped by the worker, nothing to do here
+    }
+
+    // A resumed job runs right away rather than after a full interval
+    public void onCategoryResumed(int groupType) {
+        long now = now();
+        for (Job job : jobs)
+            if (job.groupType == groupType)
+                job.nextRun = now;
+        LockSupport.unpark(worker);
+    }
+
+    // Stops the worker; jobs that are mid-run finish, nothing new is started
+    public void shutdown() {
+        shutdown(null);
+    }
+
+    // Same, then runs last on the worker after every job has finished, or right
+    // away if no worker was ever started. Cleanup that must not race a late job
+    // goes here.
+    public synchronized void shutdown(Runnable last) {
+        lastTask = last;
+        shutdown = true;
+        if (worker == null && last != null)
+            runTask(last);
+        LockSupport.unpark(worker);
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (!shutdown) {
+            Runnable task;
+            while (!shutdown && (task = tasks.poll()) != null)
+                runTask(task);
+
+            long wait = nextWait();
+            if (wait < 0) {
+                LockSupport.park(this);
+                continue;
+            } else if (wait > 0) {
+                LockSupport.parkNanos(this, wait * 1000000);
+                continue;
+            }
+
+            // Run everything due now or within the coalescing window
+            long now = now();
+            for (Job job : jobs) {
+                if (shutdown)
+                    break;
+                if (state.isPaused(job.groupType) || job.nextRun > now + COALESCE_WINDOW)
+                    continue;
+
+                job.nextRun = Math.max(job.nextRun + job.interval, now);
+                runTask(job.task);
+            }
+        }
+
+        Runnable last = lastTask;
+        if (last != null)
+            runTask(last);
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Poll task failed", e);
+        }
+    }
+
+    // Returns 0 if work is due, the ms until the next job, or -1 if all are paused
+    private long nextWait() {
+        if (!tasks.isEmpty())
+            return 0;
+
+        long next = Long.MAX_VALUE;
+        for (Job job : jobs)
+            if (!state.isPaused(job.groupType))
+                next = Math.min(next, job.nextRun);
+
+        if (next == Long.MAX_VALUE)
+            return -1;
+        return Math.max(0, next - now());
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of getprop output grouped by category prefix ("led.", "gpio.", ...).
+ *
+ * getprop is run once per process and every line is filed under the category
+ * named by the second to last segment of its property key, so
+ * "[hw.gpio.dio0]: [240]" lands in "gpio.". The index outlives the activity,
+ * so recreating it (rotation, config changes) does not fork getprop again.
+ */
+public class PropertyIndex {
+    private static final String GETPROP = "/system/bin/getprop";
+
+    private static PropertyIndex instance;
+
+    private final HashMap<String, ArrayList<String>> categories =
+            new HashMap<String, ArrayList<String>>();
+    private final HashMap<String, String> values = new HashMap<String, String>();
+
+    // Returns the process wide index, running getprop on first use
+    public static synchronized PropertyIndex get() {
+        if (instance == null)
+            instance = load(new String[] {GETPROP});
+        return instance;
+    }
+
+    // Runs command, normally getprop, and indexes what it prints
+    static PropertyIndex load(String[] command) {
+        long t = LatencyStats.start();
+        PropertyIndex index = new PropertyIndex();
+        Process proc = null;
+        try {
+            proc = Runtime.getRuntime().exec(command);
+            BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            index.parse(br);
+            br.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (proc != null)
+                proc.destroy();
+        }
+        LatencyStats.record(LatencyStats.OP_GETPROP, t);
+        return index;
+    }
+
+    // Builds an index from getprop style text instead of running getprop
+    static PropertyIndex parse(String dump) {
+        PropertyIndex index = new PropertyIndex();
+        try {
+            index.parse(new BufferedReader(new StringReader(dump)));
+        } catch (IOException e) {
+            // Not thrown by a StringReader
+        }
+        return index;
+    }
+
+    // Files every "[key]: [value]" line of a getprop dump under its category
+    void parse(BufferedReader br) throws IOException {
+        String line;
+        while ((line = br.readLine()) != null) {
+            String category = categoryOf(line);
+            if (category == null)
+                continue;
+            values.put(line.substring(1, line.indexOf(']')), valueOf(line));
+
+            ArrayList<String> props = categories.get(category);
+            if (props == null) {
+                props = new ArrayList<String>();
+                categories.put(category, props);
+            }
+            props.add(line);
+        }
+    }
+
+    // Returns e.g. "gpio." for "[hw.gpio.dio0]: [240]", or null for malformed lines
+    static String categoryOf(String line) {
+        int keyEnd = line.indexOf(']');
+        if (!line.startsWith("[") || keyEnd < 0)
+            return null;
+
+        int last = line.lastIndexOf('.', keyEnd);
+        if (last <= 1)
+            return null;
+
+        int prev = line.lastIndexOf('.', last - 1);
+        int start = prev < 0 ? 1 : prev + 1;
+        return line.substring(start, last + 1);
+    }
+
+    // Returns the value, e.g. "240" for "[hw.gpio.dio0]: [240]"
+    static String valueOf(String line) {
+        int start = line.lastIndexOf('[') + 1;
+        int end = line.lastIndexOf(']');
+        // Multi-line values have no closing bracket on their first line
+        return end < start ? line.substring(start) : line.substring(start, end);
+    }
+
+    // Returns the value of a property, or def if it is not set
+    public String getValue(String key, String def) {
+        String value = values.get(key);
+        return value == null ? def : value;
+    }
+
+    // Returns a copy of the raw getprop lines filed under the given prefix
+    public List<String> getCategory(String typePrefix) {
+        ArrayList<String> props = categories.get(typePrefix);
+        return props == null ? new ArrayList<String>() : new ArrayList<String>(props);
+    }
+}
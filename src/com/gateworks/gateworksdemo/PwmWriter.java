@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Background writer for PWM duty cycles.
+ *
+ * Each channel keeps only its latest requested duty cycle. The writer thread
+ * writes it to sysfs at most once per rate interval, so a fast slider drag
+ * turns into a bounded number of driver writes; anything requested in between
+ * replaces the pending value and is counted as coalesced. flush() writes the
+ * pending value right away regardless of the rate limit.
+ *
+ * Period changes go through reconfigure(), which runs the whole period/duty
+ * update as one batch on the writer thread, ahead of any pending duty cycle.
+ */
+public class PwmWriter implements Runnable {
+    private static final String TAG = "PwmWriter";
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static class Channel {
+        final String name;
+        final AtomicInteger pending = new AtomicInteger(NONE);
+        volatile boolean flush;
+        long lastWrite; // writer thread only
+
+        Channel(String name) {
+            this.name = name;
+        }
+    }
+
+    // Outcome of a reconfigure(), delivered on the writer thread
+    public static class Result {
+        public final String name;
+        public final int period, dutyCycle; // read back after the writes (ns)
+        public final boolean verified; // read back matched what was written
+        public final long latencyNanos; // from reconfigure() to verification
+
+        Result(String name, int period, int dutyCycle, boolean verified, long latencyNanos) {
+            this.name = name;
+            this.period = period;
+            this.dutyCycle = dutyCycle;
+            this.verified = verified;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+
+    public interface Callback {
+        void onReconfigured(Result result);
+    }
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong reconfigureCount = new AtomicLong();
+    private volatile long maxReconfigureLatency;
+    private volatile int minInterval;
+    private volatile boolean shutdown = false;
+    private final Thread worker;
+
+    public PwmWriter(int maxWritesPerSecond) {
+        setMaxRate(maxWritesPerSecond);
+        worker = new Thread(this, TAG);
+        worker.start();
+    }
+
+    // Upper bound on sysfs writes per second for each channel
+    public void setMaxRate(int maxWritesPerSecond) {
+        minInterval = 1000 / Math.max(1, maxWritesPerSecond);
+    }
+
+    // Queues a duty cycle (ns), replacing any value not yet written
+    public void setDutyCycle(String name, int dutyCycle) {
+        if (channel(name).pending.getAndSet(dutyCycle) != NONE)
+            coalescedCount.incrementAndGet();
+        LockSupport.unpark(worker);
+    }
+
+    // Writes the channel's pending value without waiting for the rate limit
+    public void flush(String name) {
+        channel(name).flush = true;
+        LockSupport.unpark(worker);
+    }
+
+    // Changes period and duty cycle (ns) of a channel as one batch on the writer thread.
+    // The current values come from the caller's cached state instead of a sysfs read.
+    public void reconfigure(final String name, final int oldPeriod, final int newPeriod,
+                            final int newDutyCycle, final Callback callback) {
+        final long start = System.nanoTime();
+        tasks.add(new Runnable() {
+            public void run() {
+                // This supersedes any duty cycle still waiting from the slider
+                channel(name).pending.set(NONE);
+
+                // The driver rejects duty >= period at every step: grow the period before
+                // raising the duty cycle, shrink it only after lowering the duty cycle
+                if (newPeriod >= oldPeriod) {
+                    Hal.get().setPwmPeriod(name, newPeriod);
+                    Hal.get().setPwmDutyCycle(name, newDutyCycle);
+                } else {
+                    Hal.get().setPwmDutyCycle(name, newDutyCycle);
+                    Hal.get().setPwmPeriod(name, newPeriod);
+                }
+
+                int period = Hal.get().getPwmPeriod(name);
+                int dutyCycle = Hal.get().getPwmDutyCycle(name);
+                long latency = System.nanoTime() - start;
+
+                reconfigureCount.incrementAndGet();
+                if (latency > maxReconfigureLatency)
+                    maxReconfigureLatency = latency;
+                LatencyStats.recordNanos(LatencyStats.OP_PWM_RECONFIGURE, latency);
+
+                callback.onReconfigured(new Result(name, period, dutyCycle,
+                        period == newPeriod && dutyCycle == newDutyCycle, latency));
+            }
+        });
+        LockSupport.unpark(worker);
+    }
+
+    public long getReconfigureCount() {
+        return reconfigureCount.get();
+    }
+
+    public long getMaxReconfigureLatency() {
+        return maxReconfigureLatency;
+    }
+
+    // Duty cycle writes that reached sysfs
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    // Duty cycle requests replaced by a newer one before being written
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(worker);
+    }
+
+    private Channel channel(String name) {
+        Channel channel = channels.get(name);
+        if (channel == null) {
+            channels.putIfAbsent(name, new Channel(name));
+            channel = channels.get(name);
+        }
+        return channel;
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        while (!shutdown) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "PWM task failed", e);
+                }
+            }
+
+            long now = System.nanoTime() / 1000000;
+            long wait = -1;
+
+            for (Channel channel : channels.values()) {
+                if (channel.pending.get() == NONE) {
+                    channel.flush = false;
+                    continue;
+                }
+
+                long due = channel.lastWrite + minInterval;
+                if (!channel.flush && now < due) {
+                    wait = wait < 0 ? due - now : Math.min(wait, due - now);
+                    continue;
+                }
+
+                channel.flush = false;
+                int dutyCycle = channel.pending.getAndSet(NONE);
+                if (dutyCycle == NONE)
+                    continue;
+                try {
+                    Hal.get().setPwmDutyCycle(channel.name, dutyCycle);
+                    writeCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Unable to set duty cycle of " + channel.name, e);
+                }
+                channel.lastWrite = now;
+            }
+
+            if (!tasks.isEmpty())
+                continue;
+            if (wait < 0)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, wait * 1000000);
+        }
+    }
+}
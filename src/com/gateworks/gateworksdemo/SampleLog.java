@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Binary log of every sample the pollers take, for soak tests that run for days.
+ *
+ * Samplers append fixed size records to one of two BLOCK_SIZE buffers under a
+ * short lock; when it fills, the buffers swap and a writer thread stores the
+ * full one with a single write, optionally deflated. So the sampling threads
+ * never touch storage, and storage only sees large writes. Should the writer
+ * fall a whole block behind, new samples are dropped and counted rather than
+ * stalling the sampler. A partly filled block goes out after FLUSH_INTERVAL,
+ * which bounds what a crash can lose.
+ *
+ * A file is rotated once it reaches the size limit, and the oldest files are
+ * deleted to keep the count limit. Every file starts with the channel table,
+ * so each one can be read on its own with SampleLogReader.
+ *
+ * File format, big endian:
+ *
+ *   file:    int MAGIC, byte flags (FLAG_DEFLATE), block*
+ *   block:   int raw length, int stored length, stored bytes
+ *   records: 'C' u16 channel, u16 length, UTF-8 name
+ *            'S' u16 channel, i64 wall clock ms, i32 value
+ *
+ * Recording is configured by the persist.gw.record.* properties: "1" to start
+ * recording with the app, .dir, .compress (0/1), .size (MB per file) and
+ * .files (files kept).
+ */
+public class SampleLog implements Runnable {
+    private static final String TAG = "SampleLog";
+
+    static final int MAGIC = 0x47574c31; // "GWL1"
+    static final int FLAG_DEFLATE = 1;
+    static final byte RECORD_CHANNEL = 'C';
+    static final byte RECORD_SAMPLE = 'S';
+    static final int SAMPLE_SIZE = 15;
+    static final String SUFFIX = ".gwlog";
+
+    static final String PROPERTY = "persist.gw.record";
+    static final int BLOCK_SIZE = 128 * 1024;
+    static final int FLUSH_INTERVAL = 60000; // ms
+    static final int DEFAULT_FILE_SIZE = 16; // MB
+    static final int DEFAULT_FILES = 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Channel names outlive recordings, so ids stay the same across them
+    private static final ArrayList<String> channels = new ArrayList<String>();
+    private static volatile SampleLog current;
+
+    private final File dir;
+    private final boolean compress;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final long clockOffset; // wall clock minus elapsedRealtime
+    private final Thread writer;
+
+    // Guarded by this; the writer owns whichever buffer is neither
+    private ByteBuffer active = ByteBuffer.allocate(BLOCK_SIZE);
+    private ByteBuffer standby = ByteBuffer.allocate(BLOCK_SIZE);
+    private ByteBuffer pending;
+    private boolean stopping;
+    private long lastFlush;
+    private long recorded;
+    private long dropped;
+
+    // Writer state
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressed = new byte[BLOCK_SIZE];
+    private FileOutputStream out;
+    private File file;
+    private long fileSize;
+    private volatile long bytesWritten;
+    private volatile int filesWritten;
+
+    private SampleLog(File dir, boolean compress, long maxFileSize, int maxFiles) {
+        this.dir = dir;
+        this.compress = compress;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        clockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        lastFlush = SystemClock.elapsedRealtime();
+        writer = new Thread(this, TAG);
+        writer.start();
+    }
+
+    static boolean isEnabled() {
+        return PropertyIndex.get().getValue(PROPERTY, "0").equals("1");
+    }
+
+    // The recording in progress, or null
+    public static SampleLog current() {
+        return current;
+    }
+
+    // Starts recording as configured by the properties, unless already recording
+    public static synchronized SampleLog start(Context context) {
+        PropertyIndex props = PropertyIndex.get();
+        String dir = props.getValue(PROPERTY + ".dir",
+                new File(context.getFilesDir(), "samples").getPath());
+        return start(new File(dir),
+                props.getValue(PROPERTY + ".compress", "1").equals("1"),
+                intValue(props, PROPERTY + ".size", DEFAULT_FILE_SIZE) * 1024L * 1024L,
+                intValue(props, PROPERTY + ".files", DEFAULT_FILES));
+    }
+
+    // Starts recording with explicit settings, e.g. from a harness off the board
+    static synchronized SampleLog start(File dir, boolean compress, long maxFileSize,
+                                        int maxFiles) {
+        if (current != null)
+            return current;
+        current = new SampleLog(dir, compress, maxFileSize, maxFiles);
+        Log.i(TAG, "Recording to " + dir);
+        return current;
+    }
+
+    // Stops recording; what was recorded so far is still written out
+    public static synchronized void stop() {
+        if (current == null)
+            return;
+        current.close();
+        current = null;
+    }
+
+    private static int intValue(PropertyIndex props, String key, int def) {
+        try {
+            return Math.max(1, Integer.parseInt(props.getValue(key, Integer.toString(def))));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    // Returns the id of a named channel, e.g. "hwmon.temp", adding it if it is new
+    public static int channel(String name) {
+        int id;
+        synchronized (channels) {
+            id = channels.indexOf(name);
+            if (id >= 0)
+                return id;
+            id = channels.size();
+            channels.add(name);
+        }
+        SampleLog log = current;
+        if (log != null)
+            log.define(id, name);
+        return id;
+    }
+
+    private synchronized void define(int id, String name) {
+        byte[] utf = name.getBytes(UTF8);
+        if (active.remaining() < 5 + utf.length && !swap())
+            return; // the next file's channel table has it
+        active.put(RECORD_CHANNEL).putShort((short) id).putShort((short) utf.length).put(utf);
+    }
+
+    // Appends one sample; time is SystemClock.elapsedRealtime() of the read
+    public void record(int channel, long time, int value) {
+        synchronized (this) {
+            if (stopping)
+                return;
+            if (active.remaining() < SAMPLE_SIZE && !swap()) {
+                dropped++;
+                return;
+            }
+            active.put(RECORD_SAMPLE).putShort((short) channel).putLong(time + clockOffset)
+                    .putInt(value);
+            recorded++;
+        }
+    }
+
+    // Hands the active buffer to the writer; false if the writer still holds the other one
+    private boolean swap() {
+        if (standby == null)
+            return false;
+        pending = active;
+        active = standby;
+        standby = null;
+        LockSupport.unpark(writer);
+        return true;
+    }
+
+    private void close() {
+        synchronized (this) {
+            stopping = true;
+        }
+        LockSupport.unpark(writer);
+    }
+
+    // Waits for a stopped recording's last block to reach its file
+    boolean awaitClosed(long millis) throws InterruptedException {
+        writer.join(millis);
+        return !writer.isAlive();
+    }
+
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    // Samples lost because the writer was a whole block behind
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        // Opened up front, so the first block is not held up creating the file
+        try {
+            openFile();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write to " + dir, e);
+            closeFile();
+        }
+
+        while (true) {
+            ByteBuffer block;
+            boolean stop;
+            synchronized (this) {
+                // Partly filled blocks go out every FLUSH_INTERVAL and on stop
+                long now = SystemClock.elapsedRealtime();
+                if (pending == null && active.position() > 0 &&
+                        (stopping || now - lastFlush >= FLUSH_INTERVAL))
+                    swap();
+                block = pending;
+                pending = null;
+                stop = stopping;
+                if (block != null)
+                    lastFlush = now;
+            }
+
+            if (block != null) {
+                write(block);
+                block.clear();
+                synchronized (this) {
+                    standby = block;
+                }
+                continue;
+            }
+            if (stop)
+                break;
+            LockSupport.parkNanos(this, FLUSH_INTERVAL * 1000000L);
+        }
+
+        closeFile();
+        deflater.end();
+    }
+
+    private void write(ByteBuffer block) {
+        try {
+            if (out == null)
+                openFile();
+            writeBlock(block.array(), block.position());
+            if (fileSize >= maxFileSize)
+                closeFile();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write " + file, e);
+            closeFile();
+        }
+    }
+
+    private void writeBlock(byte[] raw, int length) throws IOException {
+        byte[] stored = raw;
+        int storedLength = length;
+        if (compress) {
+            deflater.reset();
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == compressed.length)
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                storedLength += deflater.deflate(compressed, storedLength,
+                        compressed.length - storedLength);
+            }
+            stored = compressed;
+        }
+
+        byte[] header = new byte[8];
+        ByteBuffer.wrap(header).putInt(length).putInt(storedLength);
+        out.write(header);
+        out.write(stored, 0, storedLength);
+        fileSize += header.length + storedLength;
+        bytesWritten += header.length + storedLength;
+    }
+
+    // Starts a new file with the channel table and makes room under the file limit
+    private void openFile() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US);
+        file = new File(dir, "samples-" + format.format(new Date()) + SUFFIX);
+        out = new FileOutputStream(file);
+        fileSize = 0;
+        filesWritten++;
+
+        byte[] header = new byte[5];
+        ByteBuffer.wrap(header).putInt(MAGIC).put((byte) (compress ? FLAG_DEFLATE : 0));
+        out.write(header);
+        fileSize += header.length;
+
+        String[] names;
+        synchronized (channels) {
+            names = channels.toArray(new String[channels.size()]);
+        }
+        ByteBuffer table = ByteBuffer.allocate(BLOCK_SIZE);
+        for (int id = 0; id < names.length; id++) {
+            byte[] utf = names[id].getBytes(UTF8);
+            table.put(RECORD_CHANNEL).putShort((short) id).putShort((short) utf.length).put(utf);
+        }
+        writeBlock(table.array(), table.position());
+
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() {
+        String[] logs = dir.list();
+        if (logs == null)
+            return;
+        Arrays.sort(logs); // names sort by creation time
+        int count = 0;
+        for (String name : logs)
+            if (name.endsWith(SUFFIX))
+                count++;
+        for (int i = 0; i < logs.length && count > maxFiles; i++) {
+            if (!logs[i].endsWith(SUFFIX))
+                continue;
+            if (!new File(dir, logs[i]).delete())
+                Log.w(TAG, "Cannot delete " + logs[i]);
+            count--;
+        }
+    }
+
+    private void closeFile() {
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot close " + file, e);
+        }
+        out = null;
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        long samples, lost;
+        synchronized (this) {
+            samples = recorded;
+            lost = dropped;
+        }
+        pw.println(prefix + "Recording: " + samples + " samples, " + lost + " dropped, "
+                + bytesWritten + " bytes in " + filesWritten + " files to " + dir
+                + (compress ? " (deflated)" : ""));
+    }
+}
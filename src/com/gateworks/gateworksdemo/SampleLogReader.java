@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the files written by SampleLog, and converts them to CSV.
+ *
+ * Only plain Java is used, so logs pulled off a board can be converted on a
+ * workstation as well:
+ *
+ *   java -cp <classes> com.gateworks.gateworksdemo.SampleLogReader *.gwlog > samples.csv
+ *
+ * A file cut short by a crash or power loss is read up to its last whole block.
+ */
+public class SampleLogReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public interface Listener {
+        void onSample(String channel, long time, int value);
+    }
+
+    // Calls the listener for every sample of a file, in the order they were recorded
+    public static void read(File file, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != SampleLog.MAGIC)
+                throw new IOException(file + " is not a sample log");
+            boolean deflated = (in.readByte() & SampleLog.FLAG_DEFLATE) != 0;
+
+            Inflater inflater = new Inflater();
+            String[] channels = new String[16];
+            byte[] stored = new byte[SampleLog.BLOCK_SIZE];
+            byte[] raw = new byte[SampleLog.BLOCK_SIZE];
+            while (true) {
+                int rawLength, storedLength;
+                try {
+                    rawLength = in.readInt();
+                    storedLength = in.readInt();
+                    if (stored.length < storedLength)
+                        stored = new byte[storedLength];
+                    in.readFully(stored, 0, storedLength);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (raw.length < rawLength)
+                    raw = new byte[rawLength];
+                if (deflated) {
+                    inflater.reset();
+                    inflater.setInput(stored, 0, storedLength);
+                    try {
+                        if (inflater.inflate(raw, 0, rawLength) != rawLength)
+                            throw new IOException(file + ": short block");
+                    } catch (DataFormatException e) {
+                        throw new IOException(file + ": corrupt block", e);
+                    }
+                } else {
+                    System.arraycopy(stored, 0, raw, 0, rawLength);
+                }
+                channels = parse(ByteBuffer.wrap(raw, 0, rawLength), channels, listener);
+            }
+            inflater.end();
+        } finally {
+            in.close();
+        }
+    }
+
+    // Returns the channel table, grown if the block defined new channels
+    private static String[] parse(ByteBuffer block, String[] channels, Listener listener)
+            throws IOException {
+        while (block.hasRemaining()) {
+            byte type = block.get();
+            int channel = block.getShort() & 0xffff;
+            if (type == SampleLog.RECORD_CHANNEL) {
+                byte[] utf = new byte[block.getShort() & 0xffff];
+                block.get(utf);
+                if (channel >= channels.length)
+                    channels = Arrays.copyOf(channels, Math.max(channel + 1, channels.length * 2));
+                channels[channel] = new String(utf, UTF8);
+            } else if (type == SampleLog.RECORD_SAMPLE) {
+                long time = block.getLong();
+                int value = block.getInt();
+                String name = channel < channels.length ? channels[channel] : null;
+                listener.onSample(name != null ? name : "#" + channel, time, value);
+            } else {
+                throw new IOException("Unknown record type " + type);
+            }
+        }
+        return channels;
+    }
+
+    // Writes "time,channel,value" lines, time in ms since the epoch
+    public static void toCsv(File file, final Writer out) throws IOException {
+        final IOException[] error = new IOException[1];
+        read(file, new Listener() {
+            public void onSample(String channel, long time, int value) {
+                if (error[0] != null)
+                    return;
+                try {
+                    out.write(Long.toString(time));
+                    out.write(',');
+                    out.write(channel);
+                    out.write(',');
+                    out.write(Integer.toString(value));
+                    out.write('\n');
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF8));
+        out.write("time,channel,value\n");
+        for (String name : args)
+            toCsv(new File(name), out);
+        out.flush();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * Fixed size history of one sensor, kept in primitive arrays.
+ *
+ * Once full, each new sample overwrites the oldest, so memory use is fixed at
+ * construction (12 bytes per sample). Written by the sampling thread and read
+ * in bulk by the UI.
+ */
+public class SampleRing {
+    private final long[] timestamps;
+    private final int[] values;
+    private int head; // next slot to write
+    private int count;
+
+    public SampleRing(int capacity) {
+        timestamps = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized void add(long timestamp, int value) {
+        timestamps[head] = timestamp;
+        values[head] = value;
+        head = (head + 1) % values.length;
+        if (count < values.length)
+            count++;
+    }
+
+    // Returns the newest value, or def if nothing was sampled yet
+    public synchronized int latest(int def) {
+        if (count == 0)
+            return def;
+        return values[(head - 1 + values.length) % values.length];
+    }
+
+    // Copies up to dstValues.length of the newest samples, oldest first, and
+    // returns how many were copied. dstTimestamps may be null.
+    public synchronized int copyInto(long[] dstTimestamps, int[] dstValues) {
+        int n = Math.min(count, dstValues.length);
+        int start = (head - n + values.length) % values.length;
+
+        // The requested range may wrap around the end of the arrays
+        int first = Math.min(n, values.length - start);
+        System.arraycopy(values, start, dstValues, 0, first);
+        System.arraycopy(values, 0, dstValues, first, n - first);
+        if (dstTimestamps != null) {
+            System.arraycopy(timestamps, start, dstTimestamps, 0, first);
+            System.arraycopy(timestamps, 0, dstTimestamps, first, n - first);
+        }
+        return n;
+    }
+}
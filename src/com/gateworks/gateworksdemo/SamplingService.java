@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.SystemClock;
+
+/**
+ * Samples every hwmon sensor independently of the activity.
+ *
+ * The service is started as well as bound, so it keeps sampling after the UI
+ * is closed. Each sensor's readings go into its own SampleRing, so reopening
+ * the activity can show recent history. A sensor keeps DEFAULT_HISTORY samples
+ * unless the persist.gw.history.<sensor> property asks for another size.
+ *
+ * Sensors are not read on every tick: a PollPolicy backs each one off while
+ * its value is stable, so only real reads end up in the history rings. While
+ * the activity is bound, sensors whose rows are off screen drop to
+ * BACKGROUND_INTERVAL.
+ *
+ * Every read is checked against the sensor's AlarmRules on the sampling
+ * thread, collapsed group or not. Sensors with rules never drop to the
+ * background, so an alarm follows the reading that caused it within the
+ * sensor's maximum interval.
+ */
+public class SamplingService extends Service {
+    // Default polling bounds; MAX_INTERVAL is the freshness target of a stable sensor (ms)
+    static final int MIN_INTERVAL = 500;
+    static final int MAX_INTERVAL = 5000;
+    static final int BACKGROUND_INTERVAL = 30000; // off screen sensors while a UI is bound
+    static final int DEFAULT_HISTORY = 3600;
+    private static final int ALARM_NOTIFICATION = 1000; // plus the rule's index
+
+    public interface Listener {
+        // Called on the sampling thread after every pass over the sensors
+        void onHwmonSampled(SensorSnapshot snapshot);
+    }
+
+    public class LocalBinder extends Binder {
+        SamplingService getService() {
+            return SamplingService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    // Never paused: history is kept whether or not the group is on screen
+    private final CategoryState categoryState = new CategoryState();
+    private final PollScheduler scheduler = new PollScheduler(categoryState);
+    private final SysfsAttributeCache attributeCache = new SysfsAttributeCache(64);
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    // Everything indexed by sensor, replaced as a whole when sensors come or go
+    private static class Sensors {
+        final String[] names;
+        final String[] paths;
+        final SampleRing[] rings;
+        final int[] channels; // SampleLog channel ids
+        final PollPolicy policy;
+        final AlarmRules alarms;
+
+        Sensors(String[] names, String[] paths, SampleRing[] rings, AlarmRules.Notifier notifier) {
+            this.names = names;
+            this.paths = paths;
+            this.rings = rings;
+            channels = new int[names.length];
+            for (int i = 0; i < names.length; i++)
+                channels[i] = SampleLog.channel("hwmon." + names[i]);
+            policy = new PollPolicy("hwmon", names, MIN_INTERVAL, MAX_INTERVAL, BACKGROUND_INTERVAL);
+            alarms = AlarmRules.load(names, notifier);
+        }
+    }
+
+    private volatile Sensors sensors;
+    private volatile SensorSnapshot latest;
+    private Sensors evaluated; // sensors whose alarms the sampler last checked, only used by it
+    private int tick; // sampler job interval, 0 until the job exists
+
+    public void onCreate() {
+        super.onCreate();
+        // Soak tests record without the UI ever being opened
+        if (SampleLog.isEnabled())
+            SampleLog.start(this);
+        reload(DeviceTable.scan(Hal.get().listDevices(false)).get(Device.Kind.HWMON));
+    }
+
+    // Picks up hwmons that appeared or disappeared. Sensors that stay keep their
+    // history; the order follows the device list, like the HWMON group's children.
+    public synchronized void reload(Device[] hwmons) {
+        Sensors old = sensors;
+        PropertyIndex props = PropertyIndex.get();
+        String[] names = new String[hwmons.length];
+        String[] paths = new String[hwmons.length];
+        SampleRing[] rings = new SampleRing[hwmons.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = hwmons[i].name;
+            paths[i] = hwmons[i].path;
+            int prev = old == null ? -1 : Arrays.asList(old.names).indexOf(names[i]);
+            rings[i] = prev >= 0 ? old.rings[prev] : new SampleRing(historySize(props, names[i]));
+        }
+        sensors = new Sensors(names, paths, rings, alarmNotifier);
+        latest = null;
+
+        // The job keeps its first interval; later sensors asking for a shorter
+        // minimum are read at that interval instead
+        if (tick == 0 && names.length > 0) {
+            tick = sensors.policy.getMinInterval();
+            scheduler.addJob(Device.GROUP_HWMON, tick, sampler);
+        }
+    }
+
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    // With no UI left nothing is off screen, so every sensor goes back to full rate
+    public boolean onUnbind(Intent intent) {
+        Sensors s = sensors;
+        for (int i = 0; i < s.names.length; i++)
+            s.policy.setBackground(i, false);
+        return false;
+    }
+
+    // The cleanup runs after the sampler's last pass, which could otherwise reopen a
+    // handle or raise an alarm again
+    public void onDestroy() {
+        scheduler.shutdown(new Runnable() {
+            public void run() {
+                attributeCache.evictAll();
+                // Nothing watches the sensors any more, so raised alarms go away with the service
+                sensors.alarms.reset();
+            }
+        });
+        super.onDestroy();
+    }
+
+    private static int historySize(PropertyIndex props, String name) {
+        try {
+            return Math.max(1, Integer.parseInt(props.getValue("persist.gw.history." + name,
+                    Integer.toString(DEFAULT_HISTORY))));
+        } catch (NumberFormatException e) {
+            return DEFAULT_HISTORY;
+        }
+    }
+
+    // Runs at the policy's shortest interval and reads only the sensors that are due;
+    // the others carry their last value into the snapshot
+    private final Runnable sampler = new Runnable() {
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            Sensors s = sensors;
+            SampleLog log = SampleLog.current();
+            SensorSnapshot prev = latest;
+            if (prev != null && prev.size() != s.names.length)
+                prev = null;
+            // Alarms of replaced rules are cleared here, so they never race their evaluation
+            if (evaluated != s) {
+                if (evaluated != null)
+                    evaluated.alarms.reset();
+                evaluated = s;
+            }
+            int[] values = new int[s.names.length];
+            boolean sampled = false;
+            for (int i = 0; i < s.names.length; i++) {
+                // The scheduler may run the pass up to COALESCE_WINDOW early
+                if (prev != null && !s.policy.isDue(i, now + PollScheduler.COALESCE_WINDOW)) {
+                    values[i] = prev.get(i);
+                    continue;
+                }
+                values[i] = readHwmon(s.names[i], s.paths[i]);
+                s.rings[i].add(now, values[i]);
+                if (log != null)
+                    log.record(s.channels[i], now, values[i]);
+                long t = LatencyStats.start();
+                s.alarms.evaluate(i, values[i]);
+                LatencyStats.record(LatencyStats.OP_ALARM_EVAL, t);
+                s.policy.onSample(i, now, prev == null || values[i] != prev.get(i));
+                sampled = true;
+            }
+            if (!sampled)
+                return;
+
+            SensorSnapshot snapshot = new SensorSnapshot(now, values);
+            latest = snapshot;
+            for (Listener listener : listeners)
+                listener.onHwmonSampled(snapshot);
+        }
+    };
+
+    // Raised alarms with a notify action stay in the status bar until they clear
+    private final AlarmRules.Notifier alarmNotifier = new AlarmRules.Notifier() {
+        public void onAlarm(int rule, String description, int value, boolean raised) {
+            NotificationManager manager =
+                    (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            if (!raised) {
+                manager.cancel(ALARM_NOTIFICATION + rule);
+                return;
+            }
+            manager.notify(ALARM_NOTIFICATION + rule, new Notification.Builder(SamplingService.this)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentTitle(getString(R.string.alarm_title))
+                    .setContentText(description + ": " + value)
+                    .setWhen(System.currentTimeMillis())
+                    .setOngoing(true)
+                    .build());
+        }
+    };
+
+    // Reads a hwmon through the attribute cache, falling back to the Hal backend
+    private int readHwmon(String name, String path) {
+        int value = path == null ? SysfsAttributeCache.UNAVAILABLE :
+                attributeCache.readInt(path, Device.GROUP_HWMON);
+        return value != SysfsAttributeCache.UNAVAILABLE ? value : Hal.get().getHwmonValue(name);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getSensorCount() {
+        return sensors.names.length;
+    }
+
+    public String getSensorName(int sensor) {
+        return sensors.names[sensor];
+    }
+
+    // Most recent pass over all sensors, or null before the first one
+    public SensorSnapshot getLatest() {
+        return latest;
+    }
+
+    // Called by the bound activity as hwmon rows scroll in and out of view
+    public void setSensorVisible(int sensor, boolean visible) {
+        Sensors s = sensors;
+        if (sensor < s.names.length)
+            s.policy.setBackground(sensor, !visible && !s.alarms.hasRules(sensor));
+    }
+
+    public PollPolicy getPollPolicy() {
+        return sensors.policy;
+    }
+
+    public AlarmRules getAlarms() {
+        return sensors.alarms;
+    }
+
+    public SampleRing getHistory(int sensor) {
+        return sensors.rings[sensor];
+    }
+
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("hwmon polling:");
+        sensors.policy.dump("  ", pw);
+        sensors.alarms.dump("", pw);
+    }
+}
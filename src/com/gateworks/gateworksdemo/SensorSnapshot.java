@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * Readings for every child of one category, taken in a single pass on the
+ * sampling worker. Snapshots are never modified once built, so they can be
+ * handed to the UI thread as is.
+ */
+public final class SensorSnapshot {
+    private static final int[] NONE = new int[0];
+
+    public final long timestamp;
+    private final int[] values;
+
+    // Takes ownership of values; the caller must not touch the array afterwards
+    public SensorSnapshot(long timestamp, int[] values) {
+        this.timestamp = timestamp;
+        this.values = values;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    // Returns the indices whose reading differs from an earlier snapshot
+    public int[] changedSince(SensorSnapshot previous) {
+        if (previous == null || previous.values.length != values.length) {
+            int[] all = new int[values.length];
+            for (int i = 0; i < all.length; i++)
+                all[i] = i;
+            return all;
+        }
+
+        int count = 0;
+        for (int i = 0; i < values.length; i++)
+            if (values[i] != previous.values[i])
+                count++;
+        if (count == 0)
+            return NONE;
+
+        int[] changed = new int[count];
+        count = 0;
+        for (int i = 0; i < values.length; i++)
+            if (values[i] != previous.values[i])
+                changed[count++] = i;
+        return changed;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Backend that keeps all state in memory and makes up sensor readings.
+ *
+ * Every hwmon follows a slow sine wave around a base value derived from its
+ * name, quantized so it holds steady between steps, and every gpio set as
+ * an input toggles on its own period. Readings depend only on the name and
+ * the time since construction, so runs are repeatable. Writes are simply
+ * stored and read back. The simulated board has a fixed set of devices.
+ */
+public class SimulatedHardware implements Hardware {
+    private static final List<String> LED_TRIGGERS =
+            Arrays.asList("none", "timer", "heartbeat", "default-on");
+    private static final int HWMON_PERIOD = 60000; // ms
+    private static final int HWMON_STEP = 100;
+    private static final String DEVICES =
+            "[hw.led.user1]: [user1]\n" +
+            "[hw.led.user2]: [user2]\n" +
+            "[hw.gpio.dio0]: [240]\n" +
+            "[hw.gpio.dio1]: [241]\n" +
+            "[hw.gpio.dio2]: [242]\n" +
+            "[hw.gpio.dio3]: [243]\n" +
+            "[hw.hwmon.fan_tach]: [fan_tach]\n" +
+            "[hw.hwmon.temp]: [temp]\n" +
+            "[hw.hwmon.vin]: [vin]\n" +
+            "[hw.pwm.pwm2]: [pwm2]\n";
+
+    private final long start = System.nanoTime();
+    private final HashMap<String, String> ledTriggers = new HashMap<String, String>();
+    private final HashMap<String, Boolean> ledValues = new HashMap<String, Boolean>();
+    private final HashMap<String, Integer> gpioValues = new HashMap<String, Integer>();
+    private final HashMap<String, Boolean> gpioOutputs = new HashMap<String, Boolean>();
+    private final HashMap<String, Boolean> pwmEnabled = new HashMap<String, Boolean>();
+    private final HashMap<String, Integer> pwmPeriods = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> pwmDutyCycles = new HashMap<String, Integer>();
+
+    private long elapsed() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // A stable, non-negative per name seed
+    private static int seed(String name) {
+        return name.hashCode() & 0x7fffffff;
+    }
+
+    public PropertyIndex listDevices(boolean rescan) {
+        return PropertyIndex.parse(DEVICES);
+    }
+
+    public List<String> getAllLedTriggers(String name) {
+        return new ArrayList<String>(LED_TRIGGERS);
+    }
+
+    public synchronized String getLedTrigger(String name) {
+        String trigger = ledTriggers.get(name);
+        return trigger == null ? LED_TRIGGERS.get(0) : trigger;
+    }
+
+    public synchronized void setLedTrigger(String name, String trigger) {
+        if (LED_TRIGGERS.contains(trigger))
+            ledTriggers.put(name, trigger);
+    }
+
+    public synchronized boolean getLedValue(String name) {
+        Boolean on = ledValues.get(name);
+        return on != null && on;
+    }
+
+    public synchronized void setLedValue(String name, boolean on) {
+        ledValues.put(name, on);
+    }
+
+    // Inputs toggle every 2 to 10 s; outputs hold whatever was last set
+    public synchronized int getGpioValue(String name) {
+        if (!isGpioInput(name)) {
+            Integer value = gpioValues.get(name);
+            return value == null ? 0 : value;
+        }
+        long period = 2000 + seed(name) % 8000;
+        return (int) ((elapsed() / period) & 1);
+    }
+
+    public synchronized void setGpioValue(String name, int value) {
+        gpioValues.put(name, value != 0 ? 1 : 0);
+    }
+
+    public synchronized boolean isGpioInput(String name) {
+        Boolean output = gpioOutputs.get(name);
+        return output == null || !output;
+    }
+
+    public synchronized void setGpioInput(String name, boolean input) {
+        gpioOutputs.put(name, !input);
+    }
+
+    // Simulated gpios only exist in memory
+    public String getGpioDir(String name) {
+        return null;
+    }
+
+    public int getHwmonValue(String name) {
+        int seed = seed(name);
+        int base = 1000 + seed % 50000;
+        double phase = 2 * Math.PI * (elapsed() + seed % HWMON_PERIOD) / HWMON_PERIOD;
+        int value = base + (int) (base * 0.05 * Math.sin(phase));
+        return value / HWMON_STEP * HWMON_STEP;
+    }
+
+    public synchronized boolean getPwmEnabled(String name) {
+        Boolean enabled = pwmEnabled.get(name);
+        return enabled != null && enabled;
+    }
+
+    public synchronized void setPwmEnabled(String name, boolean enabled) {
+        pwmEnabled.put(name, enabled);
+    }
+
+    public synchronized int getPwmPeriod(String name) {
+        Integer period = pwmPeriods.get(name);
+        return period == null ? 1000000 : period;
+    }
+
+    public synchronized void setPwmPeriod(String name, int period) {
+        pwmPeriods.put(name, period);
+    }
+
+    public synchronized int getPwmDutyCycle(String name) {
+        Integer dutyCycle = pwmDutyCycles.get(name);
+        return dutyCycle == null ? 0 : dutyCycle;
+    }
+
+    public synchronized void setPwmDutyCycle(String name, int dutyCycle) {
+        pwmDutyCycles.put(name, dutyCycle);
+    }
+}
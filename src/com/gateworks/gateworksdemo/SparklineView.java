@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Small trend line of a sensor's last SAMPLES readings.
+ *
+ * The line segments are kept in one preallocated float[] that is rebuilt only
+ * when the samples or the view size change; onDraw just hands it to the
+ * canvas. setSamples() leaves the view alone when the window of samples is
+ * identical to what is already drawn, so a steady sensor causes no redraws.
+ */
+public class SparklineView extends View {
+    static final int SAMPLES = 60;
+    private static final float PADDING = 4;
+
+    private final int[] samples = new int[SAMPLES];
+    private final int[] scratch = new int[SAMPLES];
+    private final float[] lines = new float[(SAMPLES - 1) * 4];
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int count;
+    private int lineCount;
+
+    public SparklineView(Context context) {
+        super(context);
+        init();
+    }
+
+    public SparklineView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(2);
+        paint.setColor(Color.GRAY);
+    }
+
+    // Loads the newest samples from a history ring; returns true if the line changed
+    public boolean setSamples(SampleRing history) {
+        int n = history.copyInto(null, scratch);
+        if (n == count) {
+            int i = 0;
+            while (i < n && scratch[i] == samples[i])
+                i++;
+            if (i == n)
+                return false;
+        }
+
+        System.arraycopy(scratch, 0, samples, 0, n);
+        count = n;
+        buildLines();
+        invalidate();
+        return true;
+    }
+
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        buildLines();
+    }
+
+    // Lays the samples out right aligned, so the newest one is always at the right edge
+    private void buildLines() {
+        int width = getWidth();
+        int height = getHeight();
+        if (count < 2 || width == 0 || height == 0) {
+            lineCount = 0;
+            return;
+        }
+
+        int min = samples[0];
+        int max = samples[0];
+        for (int i = 1; i < count; i++) {
+            min = Math.min(min, samples[i]);
+            max = Math.max(max, samples[i]);
+        }
+
+        float step = (width - 2 * PADDING) / (SAMPLES - 1);
+        float left = width - PADDING - step * (count - 1);
+        float span = height - 2 * PADDING;
+        float range = max - min;
+
+        float prevX = left;
+        float prevY = scaleY(samples[0], min, range, span, height);
+        for (int i = 1; i < count; i++) {
+            float x = left + step * i;
+            float y = scaleY(samples[i], min, range, span, height);
+            int j = (i - 1) * 4;
+            lines[j] = prevX;
+            lines[j + 1] = prevY;
+            lines[j + 2] = x;
+            lines[j + 3] = y;
+            prevX = x;
+            prevY = y;
+        }
+        lineCount = count - 1;
+    }
+
+    // A flat history is drawn through the middle of the view
+    private static float scaleY(int value, int min, float range, float span, int height) {
+        if (range == 0)
+            return height / 2f;
+        return height - PADDING - (value - min) / range * span;
+    }
+
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (lineCount > 0)
+            canvas.drawLines(lines, 0, lineCount * 4, paint);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps hot sysfs attributes open and re-reads them from offset 0.
+ *
+ * sysfs regenerates an attribute's contents on every read at offset 0, so an
+ * open descriptor can be re-read indefinitely instead of paying for an
+ * open/read/close per sample. Reads land in one reused direct buffer and are
+ * parsed as integers straight from the bytes. The least recently used handle
+ * is closed once the cache is full; handles are also dropped per group when
+ * it collapses and all at once when the activity stops.
+ */
+public class SysfsAttributeCache implements CategoryState.Listener {
+    // Returned when the attribute cannot be opened or parsed
+    public static final int UNAVAILABLE = Integer.MIN_VALUE;
+
+    private static class Entry {
+        final RandomAccessFile file;
+        final int groupType;
+
+        Entry(RandomAccessFile file, int groupType) {
+            this.file = file;
+            this.groupType = groupType;
+        }
+    }
+
+    private final int capacity;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(32);
+    private final LinkedHashMap<String, Entry> open;
+
+    public SysfsAttributeCache(int capacity) {
+        this.capacity = capacity;
+        this.open = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= SysfsAttributeCache.this.capacity)
+                    return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    // Reads an integer attribute, opening and caching the file on first use
+    public synchronized int readInt(String path, int groupType) {
+        long t = LatencyStats.start();
+        int value = read(path, groupType);
+        LatencyStats.record(LatencyStats.OP_SYSFS_READ, t);
+        return value;
+    }
+
+    private int read(String path, int groupType) {
+        Entry entry = open.get(path);
+        if (entry == null) {
+            try {
+                entry = new Entry(new RandomAccessFile(path, "r"), groupType);
+            } catch (IOException e) {
+                return UNAVAILABLE;
+            }
+            open.put(path, entry);
+        }
+
+        FileChannel channel = entry.file.getChannel();
+        buf.clear();
+        try {
+            if (channel.read(buf, 0) <= 0)
+                return UNAVAILABLE;
+        } catch (IOException e) {
+            // Stale handle (e.g. the gpio was unexported); reopen on the next read
+            open.remove(path);
+            closeQuietly(entry);
+            return UNAVAILABLE;
+        }
+        return parseInt(buf);
+    }
+
+    // Parses an optionally signed decimal from the buffer, stopping at the first non-digit
+    static int parseInt(ByteBuffer buf) {
+        int len = buf.position();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && buf.get(0) == '-') {
+            negative = true;
+            i++;
+        }
+
+        int start = i;
+        int value = 0;
+        for (; i < len; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            value = value * 10 + digit;
+        }
+        if (i == start)
+            return UNAVAILABLE;
+        return negative ? -value : value;
+    }
+
+    // Collapsed groups are not sampled, so their handles are released
+    public void onCategoryPaused(int groupType) {
+        evictGroup(groupType);
+    }
+
+    public void onCategoryResumed(int groupType) {
+    }
+
+    public synchronized void evictGroup(int groupType) {
+        Iterator<Entry> it = open.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.groupType == groupType) {
+                closeQuietly(entry);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void evictAll() {
+        for (Entry entry : open.values())
+            closeQuietly(entry);
+        open.clear();
+    }
+
+    private static void closeQuietly(Entry entry) {
+        try {
+            entry.file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
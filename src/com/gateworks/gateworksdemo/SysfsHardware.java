@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Backend that reads and writes a sysfs style directory tree, one directory
+ * per device:
+ *
+ *   <root>/class/leds/<name>/brightness, trigger
+ *   <root>/class/gpio/<name>/value, direction
+ *   <root>/class/hwmon/<name>/input
+ *   <root>/class/pwm/<name>/enable, period, duty_cycle
+ *
+ * Devices are addressed by name because the mapping from names to kernel
+ * nodes lives inside GateworksUtil. Put the tree on tmpfs to get file access
+ * costs close to real sysfs; populate() builds one. Like the kernel, the
+ * trigger file lists every trigger with the active one in brackets, and this
+ * class keeps it in that form when a trigger is set. The devices listed are
+ * whatever directories the tree holds, so adding or removing one looks like
+ * a hotplug.
+ */
+public class SysfsHardware implements Hardware {
+    private final String root;
+
+    public SysfsHardware(String root) {
+        this.root = root;
+    }
+
+    // Creates a tree with the given devices in their power on state
+    public static SysfsHardware populate(String root, String[] leds, String[] gpios,
+                                         String[] hwmons, String[] pwms) throws IOException {
+        SysfsHardware hw = new SysfsHardware(root);
+        for (String name : leds) {
+            hw.create("leds", name, "brightness", "0");
+            hw.create("leds", name, "trigger", "[none] timer heartbeat default-on");
+        }
+        for (String name : gpios) {
+            hw.create("gpio", name, "value", "0");
+            hw.create("gpio", name, "direction", "in");
+        }
+        for (String name : hwmons)
+            hw.create("hwmon", name, "input", "0");
+        for (String name : pwms) {
+            hw.create("pwm", name, "enable", "0");
+            hw.create("pwm", name, "period", "1000000");
+            hw.create("pwm", name, "duty_cycle", "0");
+        }
+        return hw;
+    }
+
+    private void create(String kind, String name, String attr, String value) throws IOException {
+        File dir = new File(root + "/class/" + kind + "/" + name);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        write(path(kind, name, attr), value);
+    }
+
+    private String path(String kind, String name, String attr) {
+        return root + "/class/" + kind + "/" + name + "/" + attr;
+    }
+
+    // Class directories and the property categories their devices are listed under
+    private static final String[] KINDS = {"leds", "gpio", "hwmon", "pwm"};
+    private static final String[] CATEGORIES = {"led", "gpio", "hwmon", "pwm"};
+
+    // hwmons are listed with the path of their input, so they can be read directly
+    public PropertyIndex listDevices(boolean rescan) {
+        StringBuilder dump = new StringBuilder();
+        for (int i = 0; i < KINDS.length; i++) {
+            String[] names = new File(root + "/class/" + KINDS[i]).list();
+            if (names == null)
+                continue;
+            Arrays.sort(names);
+            for (String name : names) {
+                String value = KINDS[i].equals("hwmon") ? path("hwmon", name, "input") : name;
+                dump.append("[hw.").append(CATEGORIES[i]).append('.').append(name)
+                        .append("]: [").append(value).append("]\n");
+            }
+        }
+        return PropertyIndex.parse(dump.toString());
+    }
+
+    public List<String> getAllLedTriggers(String name) {
+        ArrayList<String> triggers = new ArrayList<String>();
+        String line = read(path("leds", name, "trigger"));
+        if (line == null)
+            return triggers;
+        for (String trigger : line.split(" ")) {
+            if (trigger.startsWith("["))
+                trigger = trigger.substring(1, trigger.length() - 1);
+            if (trigger.length() > 0)
+                triggers.add(trigger);
+        }
+        return triggers;
+    }
+
+    public String getLedTrigger(String name) {
+        String line = read(path("leds", name, "trigger"));
+        if (line == null)
+            return null;
+        int start = line.indexOf('[');
+        int end = line.indexOf(']', start);
+        return start < 0 || end < 0 ? null : line.substring(start + 1, end);
+    }
+
+    public void setLedTrigger(String name, String trigger) {
+        List<String> triggers = getAllLedTriggers(name);
+        if (!triggers.contains(trigger))
+            return;
+        StringBuilder line = new StringBuilder();
+        for (String t : triggers) {
+            if (line.length() > 0)
+                line.append(' ');
+            line.append(t.equals(trigger) ? "[" + t + "]" : t);
+        }
+        write(path("leds", name, "trigger"), line.toString());
+    }
+
+    public boolean getLedValue(String name) {
+        return readInt(path("leds", name, "brightness")) != 0;
+    }
+
+    public void setLedValue(String name, boolean on) {
+        write(path("leds", name, "brightness"), on ? "1" : "0");
+    }
+
+    public int getGpioValue(String name) {
+        return readInt(path("gpio", name, "value"));
+    }
+
+    public void setGpioValue(String name, int value) {
+        write(path("gpio", name, "value"), value != 0 ? "1" : "0");
+    }
+
+    public boolean isGpioInput(String name) {
+        return "in".equals(read(path("gpio", name, "direction")));
+    }
+
+    public void setGpioInput(String name, boolean input) {
+        write(path("gpio", name, "direction"), input ? "in" : "out");
+    }
+
+    public String getGpioDir(String name) {
+        return root + "/class/gpio/" + name;
+    }
+
+    public int getHwmonValue(String name) {
+        return readInt(path("hwmon", name, "input"));
+    }
+
+    public boolean getPwmEnabled(String name) {
+        return readInt(path("pwm", name, "enable")) != 0;
+    }
+
+    public void setPwmEnabled(String name, boolean enabled) {
+        write(path("pwm", name, "enable"), enabled ? "1" : "0");
+    }
+
+    public int getPwmPeriod(String name) {
+        return readInt(path("pwm", name, "period"));
+    }
+
+    public void setPwmPeriod(String name, int period) {
+        write(path("pwm", name, "period"), Integer.toString(period));
+    }
+
+    public int getPwmDutyCycle(String name) {
+        return readInt(path("pwm", name, "duty_cycle"));
+    }
+
+    public void setPwmDutyCycle(String name, int dutyCycle) {
+        write(path("pwm", name, "duty_cycle"), Integer.toString(dutyCycle));
+    }
+
+    private static int readInt(String path) {
+        String value = read(path);
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String read(String path) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(path));
+            try {
+                String line = br.readLine();
+                return line == null ? null : line.trim();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void write(String path, String value) {
+        try {
+            FileOutputStream out = new FileOutputStream(path);
+            try {
+                out.write(value.getBytes());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
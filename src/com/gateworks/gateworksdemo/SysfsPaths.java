@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+/**
+ * Locations of the sysfs attributes the app touches directly.
+ *
+ * The root defaults to /sys and can be pointed at a fake tree (a tmpfs
+ * directory with the same layout) for testing off a board.
+ */
+public class SysfsPaths {
+    private static volatile String root = "/sys";
+
+    public static String getRoot() {
+        return root;
+    }
+
+    public static void setRoot(String newRoot) {
+        root = newRoot;
+    }
+
+    // gpio.* properties carry the kernel gpio number, e.g. "[hw.gpio.dio0]: [240]"
+    public static String gpioDir(String gpioNumber) {
+        return root + "/class/gpio/gpio" + gpioNumber;
+    }
+
+    // hwmon.* properties may carry the absolute path of their input attribute;
+    // returns null when they don't and the reading has to go through the Hal backend
+    public static String hwmonInput(String propVal) {
+        if (!propVal.startsWith("/"))
+            return null;
+        return propVal.startsWith("/sys/") ? root + propVal.substring(4) : propVal;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gateworks.gateworksdemo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Renders PWM slider thumbs labelled with their duty cycle percentage.
+ *
+ * Each of the 101 possible labels is rendered at most once, on first use, and
+ * the bitmaps are shared by every PWM row. Rows draw them through their own
+ * ThumbDrawable, so moving a slider only swaps which cached bitmap is drawn.
+ */
+public class ThumbRenderer {
+    private final Drawable cleanThumb;
+    private final int width, height;
+    private final Bitmap[] thumbs = new Bitmap[101];
+    private final Paint textPaint = new Paint();
+    private final Canvas canvas = new Canvas();
+
+    // cleanThumb is the unlabelled thumb of the theme's SeekBar
+    public ThumbRenderer(Drawable cleanThumb) {
+        this.cleanThumb = cleanThumb;
+        this.width = Math.max(1, cleanThumb.getIntrinsicWidth());
+        this.height = Math.max(1, cleanThumb.getIntrinsicHeight());
+
+        textPaint.setStyle(Paint.Style.FILL);
+        textPaint.setColor(Color.BLACK);
+        textPaint.setTextSize(15);
+    }
+
+    // Returns the thumb for a percentage, rendering it on first use
+    Bitmap get(int percent) {
+        percent = Math.max(0, Math.min(100, percent));
+        Bitmap bm = thumbs[percent];
+        if (bm == null) {
+            long t = LatencyStats.start();
+            bm = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+            // Draw the clean thumb, then the percentage on top of it
+            canvas.setBitmap(bm);
+            cleanThumb.setBounds(0, 0, width, height);
+            cleanThumb.draw(canvas);
+            canvas.drawText(percent + "%", 2, height / 2, textPaint);
+            canvas.setBitmap(null);
+
+            thumbs[percent] = bm;
+            LatencyStats.record(LatencyStats.OP_THUMB_RENDER, t);
+        }
+        return bm;
+    }
+
+    public ThumbDrawable newThumb() {
+        return new ThumbDrawable();
+    }
+
+    // Per row thumb; changing the percentage only picks another cached bitmap
+    public class ThumbDrawable extends Drawable {
+        private int percent;
+
+        public void setPercent(int newPercent) {
+            if (newPercent == percent)
+                return;
+            percent = newPercent;
+            invalidateSelf();
+        }
+
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(get(percent), null, getBounds(), null);
+        }
+
+        public int getIntrinsicWidth() {
+            return width;
+        }
+
+        public int getIntrinsicHeight() {
+            return height;
+        }
+
+        public void setAlpha(int alpha) {
+        }
+
+        public void setColorFilter(ColorFilter colorFilter) {
+        }
+
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}